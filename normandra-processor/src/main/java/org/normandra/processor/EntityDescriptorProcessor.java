@@ -0,0 +1,464 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * generates a descriptor registry for jpa entities at compile time
+ * <p>
+ * For every {@code @Entity} and {@code @Embeddable} class, and each of their super-classes, the processor records the
+ * entity name, the table and the persistent fields declared by the class.  The generated registry implements
+ * {@code org.normandra.meta.DescriptorRegistry} and is listed in {@code META-INF/services}, where
+ * {@code DatabaseMetaBuilder} and {@code GraphMetaBuilder} pick it up so the parser does not have to scan each class
+ * for its entity name, table and persistent fields.
+ * <p>
+ * Only these scanning results are generated.  Column names, types, keys and accessors are still read from the field
+ * annotations by reflection when the metadata is built.
+ * <p>
+ * The registry class name can be set with the {@code normandra.registry} option.
+ */
+@SupportedAnnotationTypes({"javax.persistence.Entity", "javax.persistence.Embeddable"})
+@SupportedOptions(EntityDescriptorProcessor.REGISTRY_OPTION)
+public class EntityDescriptorProcessor extends AbstractProcessor {
+    public static final String REGISTRY_OPTION = "normandra.registry";
+
+    public static final String DEFAULT_REGISTRY = "org.normandra.generated.GeneratedDescriptorRegistry";
+
+    private static final String SERVICE_FILE = "META-INF/services/org.normandra.meta.DescriptorRegistry";
+
+    private static final List<String> FIELD_ANNOTATIONS = Arrays.asList(
+            "javax.persistence.Column", "javax.persistence.Embedded", "javax.persistence.EmbeddedId",
+            "javax.persistence.Id", "javax.persistence.ElementCollection", "javax.persistence.JoinColumn",
+            "javax.persistence.OneToMany", "javax.persistence.ManyToOne", "javax.persistence.ManyToMany",
+            "javax.persistence.OneToOne");
+
+    private final Map<String, Descriptor> descriptors = new TreeMap<>();
+
+    private static final class Descriptor {
+        private final String type;
+
+        private final String entity;
+
+        private final String table;
+
+        private final List<String> fields;
+
+        private Descriptor(final String type, final String entity, final String table, final List<String> fields) {
+            this.type = type;
+            this.entity = entity;
+            this.table = table;
+            this.fields = fields;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment round) {
+        for (final TypeElement annotation : annotations) {
+            for (final Element element : round.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    this.describeHierarchy((TypeElement) element);
+                }
+            }
+        }
+        if (round.processingOver() && !this.descriptors.isEmpty()) {
+            this.generate();
+        }
+        return false;
+    }
+
+    private void describeHierarchy(final TypeElement type) {
+        TypeElement current = type;
+        while (current != null && !Object.class.getName().equals(current.getQualifiedName().toString())) {
+            final String name = this.processingEnv.getElementUtils().getBinaryName(current).toString();
+            if (!this.descriptors.containsKey(name)) {
+                if (!this.isAccessible(current)) {
+                    this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Skipping inaccessible class [" + name + "], it will be read by reflection.", current);
+                    return;
+                }
+                this.descriptors.put(name, this.describe(current));
+            }
+            current = superclass(current);
+        }
+    }
+
+    private Descriptor describe(final TypeElement type) {
+        String entity = null;
+        final AnnotationMirror entityAnnotation = findAnnotation(type, "javax.persistence.Entity");
+        if (entityAnnotation != null) {
+            final String name = stringValue(entityAnnotation, "name");
+            entity = null == name || name.isEmpty() ? type.getSimpleName().toString() : name;
+        }
+
+        // the first non-empty table name in the hierarchy wins, same as the runtime parser
+        String table = null;
+        for (TypeElement current = type; current != null && table == null; current = superclass(current)) {
+            final AnnotationMirror tableAnnotation = findAnnotation(current, "javax.persistence.Table");
+            if (tableAnnotation != null) {
+                final String name = stringValue(tableAnnotation, "name");
+                if (name != null && !name.trim().isEmpty()) {
+                    table = name;
+                }
+            }
+        }
+
+        final List<String> fields = new ArrayList<>();
+        for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            for (final String annotation : FIELD_ANNOTATIONS) {
+                if (findAnnotation(field, annotation) != null) {
+                    fields.add(field.getSimpleName().toString());
+                    break;
+                }
+            }
+        }
+        return new Descriptor(this.canonicalName(type), entity, table, fields);
+    }
+
+    private void generate() {
+        final String registry = this.processingEnv.getOptions().getOrDefault(REGISTRY_OPTION, DEFAULT_REGISTRY);
+        final int dot = registry.lastIndexOf('.');
+        final String packageName = dot > 0 ? registry.substring(0, dot) : "";
+        final String simpleName = dot > 0 ? registry.substring(dot + 1) : registry;
+        final Filer filer = this.processingEnv.getFiler();
+        try {
+            final JavaFileObject source = filer.createSourceFile(registry);
+            try (final PrintWriter out = new PrintWriter(source.openWriter())) {
+                if (!packageName.isEmpty()) {
+                    out.println("package " + packageName + ";");
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * generated by " + EntityDescriptorProcessor.class.getName() + ", do not edit");
+                out.println(" */");
+                out.println("public final class " + simpleName + " implements org.normandra.meta.DescriptorRegistry {");
+                out.println("    @Override");
+                out.println("    public java.util.Collection<org.normandra.meta.ClassDescriptor> getDescriptors() {");
+                out.println("        return java.util.Arrays.asList(");
+                int i = 0;
+                for (final Descriptor descriptor : this.descriptors.values()) {
+                    final StringBuilder line = new StringBuilder("                org.normandra.meta.ClassDescriptor.of(");
+                    line.append(descriptor.type).append(".class, ");
+                    line.append(literal(descriptor.entity)).append(", ");
+                    line.append(literal(descriptor.table));
+                    for (final String field : descriptor.fields) {
+                        line.append(", ").append(literal(field));
+                    }
+                    line.append(')');
+                    if (++i < this.descriptors.size()) {
+                        line.append(',');
+                    }
+                    out.println(line);
+                }
+                out.println("        );");
+                out.println("    }");
+                out.println("}");
+            }
+
+            final FileObject service = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (final Writer out = service.openWriter()) {
+                out.write(registry);
+                out.write("\n");
+            }
+        } catch (final IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to generate entity descriptor registry [" + registry + "]: " + e.getMessage());
+        }
+    }
+
+    private boolean isAccessible(final TypeElement type) {
+        for (Element current = type; current instanceof TypeElement; current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            final NestingKind nesting = ((TypeElement) current).getNestingKind();
+            if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            if (nesting == NestingKind.MEMBER && !current.getModifiers().contains(Modifier.PUBLIC)) {
+                // package-private members are only visible within their package
+                return false;
+            }
+        }
+        return type.getModifiers().contains(Modifier.PUBLIC);
+    }
+
+    private String canonicalName(final TypeElement type) {
+        return type.getQualifiedName().toString();
+    }
+
+    private static TypeElement superclass(final TypeElement type) {
+        final TypeMirror parent = type.getSuperclass();
+        if (null == parent || parent.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) parent).asElement();
+    }
+
+    private static AnnotationMirror findAnnotation(final Element element, final String annotation) {
+        for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final Element type = mirror.getAnnotationType().asElement();
+            if (type instanceof TypeElement && ((TypeElement) type).getQualifiedName().contentEquals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String stringValue(final AnnotationMirror mirror, final String name) {
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                final Object value = entry.getValue().getValue();
+                return null == value ? null : value.toString();
+            }
+        }
+        return null;
+    }
+
+    private static String literal(final String value) {
+        if (null == value) {
+            return "null";
+        }
+        final StringBuilder text = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    text.append("\\\"");
+                    break;
+                case '\\':
+                    text.append("\\\\");
+                    break;
+                case '\n':
+                    text.append("\\n");
+                    break;
+                default:
+                    text.append(c);
+            }
+        }
+        return text.append('"').toString();
+    }
+}
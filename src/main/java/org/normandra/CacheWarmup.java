@@ -0,0 +1,488 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra;
+
+import org.normandra.cache.EntityCache;
+import org.normandra.cache.SharedDataCache;
+import org.normandra.meta.EntityMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * a plan to pre-load entities into cache, from key lists or named queries
+ * <p>
+ * Keys are split into batches and fetched through {@link EntitySession#get(EntityMeta, Object...)}; each loaded entity
+ * is stored in the session cache and, when configured, the factory's shared cache.  When run from an
+ * {@link EntityManagerFactory}, batches are fetched in parallel by up to {@link #withConcurrency(int)} entity managers,
+ * each with its own session - since those sessions are closed once done, the factory must have a shared cache to keep
+ * the entities warm for later sessions.
+ */
+public class CacheWarmup {
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmup.class);
+
+    private final List<Source> sources = new ArrayList<>();
+
+    private int batchSize = 100;
+
+    private int concurrency = 4;
+
+    private Listener listener = null;
+
+    /**
+     * receives warm-up progress, called after each completed batch (never concurrently)
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void progress(EntityMeta meta, long loaded, long completed, long total);
+    }
+
+    private static final class Source {
+        private final Class<?> type;
+
+        private final Collection<?> keys;
+
+        private final String query;
+
+        private final Map<String, Object> parameters;
+
+        private Source(final Class<?> type, final Collection<?> keys, final String query, final Map<String, Object> parameters) {
+            this.type = type;
+            this.keys = keys;
+            this.query = query;
+            this.parameters = parameters;
+        }
+    }
+
+    private static final class Batch {
+        private final EntityMeta meta;
+
+        private final Source source;
+
+        private final List<Object> keys;
+
+        private Batch(final EntityMeta meta, final Source source, final List<Object> keys) {
+            this.meta = meta;
+            this.source = source;
+            this.keys = keys;
+        }
+
+        private long size() {
+            return null == this.keys ? 1 : this.keys.size();
+        }
+    }
+
+    public CacheWarmup withKeys(final Class<?> type, final Collection<?> keys) {
+        if (null == type || null == keys) {
+            throw new IllegalArgumentException();
+        }
+        this.sources.add(new Source(type, new ArrayList<>(keys), null, null));
+        return this;
+    }
+
+    public CacheWarmup withQuery(final Class<?> type, final String nameOrQuery) {
+        return this.withQuery(type, nameOrQuery, Collections.emptyMap());
+    }
+
+    public CacheWarmup withQuery(final Class<?> type, final String nameOrQuery, final Map<String, Object> parameters) {
+        if (null == type || null == nameOrQuery || nameOrQuery.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        this.sources.add(new Source(type, null, nameOrQuery, null == parameters ? Collections.emptyMap() : new HashMap<>(parameters)));
+        return this;
+    }
+
+    public CacheWarmup withBatchSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = size;
+        return this;
+    }
+
+    /**
+     * limit the number of batches fetched at the same time
+     */
+    public CacheWarmup withConcurrency(final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive.");
+        }
+        this.concurrency = threads;
+        return this;
+    }
+
+    public CacheWarmup withListener(final Listener l) {
+        this.listener = l;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * warm up using a single entity manager, fetching batches one at a time
+     *
+     * @return Returns the number of entities loaded.
+     */
+    long run(final EntityManager manager) throws NormandraException {
+        final Progress progress = new Progress(this.plan(manager));
+        for (final Batch batch : progress.batches) {
+            progress.complete(batch, this.load(manager, batch));
+        }
+        return progress.loaded.get();
+    }
+
+    /**
+     * warm up the factory's shared cache using parallel workers, each with its own entity manager
+     *
+     * @return Returns the number of entities loaded.
+     */
+    long run(final EntityManagerFactory factory) throws NormandraException {
+        if (null == factory.getSharedCache()) {
+            throw new IllegalStateException("No shared cache is configured, warmed entities would be lost with their sessions.");
+        }
+        final List<Batch> batches;
+        try (final EntityManager planner = factory.create()) {
+            batches = this.plan(planner);
+        } catch (final NormandraException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new NormandraException("Unable to plan cache warm-up.", e);
+        }
+
+        final Progress progress = new Progress(batches);
+        final Queue<Batch> queue = new ConcurrentLinkedQueue<>(batches);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final int workers = Math.max(1, Math.min(this.concurrency, batches.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "normandra-cache-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    try (final EntityManager manager = factory.create()) {
+                        Batch batch = queue.poll();
+                        while (batch != null && null == failure.get()) {
+                            progress.complete(batch, this.load(manager, batch));
+                            batch = queue.poll();
+                        }
+                    } catch (final Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NormandraException("Cache warm-up was interrupted.", e);
+        } catch (final ExecutionException e) {
+            throw new NormandraException("Unable to warm up cache.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new NormandraException("Unable to warm up cache.", failure.get());
+        }
+        return progress.loaded.get();
+    }
+
+    private List<Batch> plan(final EntityManager manager) {
+        final List<Batch> batches = new ArrayList<>();
+        for (final Source source : this.sources) {
+            final EntityMeta meta = manager.findMeta(source.type);
+            if (null == meta) {
+                throw new IllegalArgumentException("Type [" + source.type + "] is not a registered entity.");
+            }
+            if (null == source.keys) {
+                batches.add(new Batch(meta, source, null));
+                continue;
+            }
+            List<Object> keys = new ArrayList<>(this.batchSize);
+            for (final Object key : source.keys) {
+                if (key != null) {
+                    keys.add(key);
+                }
+                if (keys.size() >= this.batchSize) {
+                    batches.add(new Batch(meta, source, keys));
+                    keys = new ArrayList<>(this.batchSize);
+                }
+            }
+            if (!keys.isEmpty()) {
+                batches.add(new Batch(meta, source, keys));
+            }
+        }
+        return batches;
+    }
+
+    private long load(final EntityManager manager, final Batch batch) throws NormandraException {
+        final DatabaseSession session = manager.getSession();
+        final SharedDataCache shared = manager.getSharedCache();
+        final long token = null == shared ? 0 : shared.begin(batch.meta);
+        final Collection<?> entities;
+        if (batch.keys != null) {
+            entities = session.get(batch.meta, batch.keys.toArray());
+        } else {
+            final DatabaseQuery<?> query = manager.query(batch.source.type, batch.source.query, batch.source.parameters);
+            entities = null == query ? Collections.emptyList() : query.list();
+        }
+        if (null == entities) {
+            return 0;
+        }
+
+        final EntityCache cache = session.getCache();
+        long loaded = 0;
+        for (final Object entity : entities) {
+            if (null == entity) {
+                continue;
+            }
+            final Object key = batch.meta.getId().fromEntity(entity);
+            if (key != null) {
+                cache.put(batch.meta, key, entity);
+                if (shared != null) {
+                    shared.put(batch.meta, entity, session, token);
+                }
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    private final class Progress {
+        private final List<Batch> batches;
+
+        private final Map<EntityMeta, long[]> totals = new HashMap<>();
+
+        private final AtomicLong loaded = new AtomicLong();
+
+        private Progress(final List<Batch> batches) {
+            this.batches = batches;
+            for (final Batch batch : batches) {
+                this.totals.computeIfAbsent(batch.meta, m -> new long[3])[2] += batch.size();
+            }
+        }
+
+        private void complete(final Batch batch, final long count) {
+            this.loaded.addAndGet(count);
+            synchronized (this) {
+                final long[] counts = this.totals.get(batch.meta);
+                counts[0] += count;
+                counts[1] += batch.size();
+                if (listener != null) {
+                    try {
+                        listener.progress(batch.meta, counts[0], counts[1], counts[2]);
+                    } catch (final Exception e) {
+                        logger.warn("Unable to report cache warm-up progress.", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -194,7 +194,12 @@
 
 package org.normandra;
 
+import org.normandra.cache.EntityCache;
+import org.normandra.cache.NullEntityCache;
 import org.normandra.meta.EntityMeta;
+import org.normandra.meta.IndexMeta;
+import org.normandra.meta.QueryMeta;
+import org.normandra.util.DirtyTracker;
 
 import java.util.Map;
 
@@ -210,6 +215,20 @@ public interface DatabaseSession extends EntitySession, Transactional {
      */
     void clear();
 
+    /**
+     * @return Returns the session-level entity cache (identity map), if any.
+     */
+    default EntityCache getCache() {
+        return NullEntityCache.getInstance();
+    }
+
+    /**
+     * @return Returns the tracker this session diffs saved entities against, or null if saves write full rows.
+     */
+    default DirtyTracker getTracker() {
+        return null;
+    }
+
     /**
      * save entity instance (updateInstance, insert)
      */
@@ -230,6 +249,23 @@ public interface DatabaseSession extends EntitySession, Transactional {
      */
     DatabaseQuery query(EntityMeta meta, String query, Map<String, Object> parameters) throws NormandraException;
 
+    /**
+     * find entities by the values of an index, with parameters keyed by column name
+     * <p>
+     * The default implementation runs the named query declared for the index, see {@link org.normandra.cache.CachedIndex}.
+     */
+    default DatabaseQuery findByIndex(final EntityMeta meta, final IndexMeta index, final Map<String, Object> values) throws NormandraException {
+        if (null == index.getQuery()) {
+            throw new NormandraException("No lookup query declared for index [" + index.getName() + "] of entity [" + meta + "].");
+        }
+        for (final QueryMeta query : meta.getQueries()) {
+            if (query.getName().equalsIgnoreCase(index.getQuery())) {
+                return this.query(meta, query.getQuery(), values);
+            }
+        }
+        throw new NormandraException("No query named [" + index.getQuery() + "] to look up index [" + index.getName() + "] of entity [" + meta + "].");
+    }
+
     /**
      * query database using string with mapped parameters
      */
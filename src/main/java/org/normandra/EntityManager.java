@@ -194,12 +194,32 @@
 
 package org.normandra;
 
+import org.normandra.association.BatchLoader;
+import org.normandra.cache.CachedDatabaseQuery;
+import org.normandra.cache.CachedPropertyQuery;
+import org.normandra.cache.CachingDatabaseQuery;
+import org.normandra.cache.CachingPropertyQuery;
+import org.normandra.cache.EntityCache;
+import org.normandra.cache.QueryResultCache;
+import org.normandra.cache.SharedDataCache;
+import org.normandra.meta.QueryMeta;
 import org.normandra.meta.ColumnMeta;
 import org.normandra.meta.EntityMeta;
 import org.normandra.meta.EntityMetaLookup;
+import org.normandra.meta.IndexMeta;
+import org.normandra.util.DataUtils;
+import org.normandra.util.DirtyTracker;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * an entity manager backed by NoSQL database
@@ -211,6 +231,17 @@ public class EntityManager extends AbstractTransactional {
 
     private final EntityMetaLookup lookup;
 
+    private SharedDataCache sharedCache = null;
+
+    private QueryResultCache queryCache = null;
+
+    /**
+     * types and keys written by the current unit of work, invalidated again once it completes
+     */
+    private final Map<EntityMeta, Set<Object>> written = new HashMap<>();
+
+    private int workDepth = 0;
+
     public EntityManager(final DatabaseSession db, final EntityMetaLookup lookup) {
         if (null == db || null == lookup) {
             throw new IllegalArgumentException();
@@ -221,11 +252,27 @@ public class EntityManager extends AbstractTransactional {
 
     @Override
     public void close() throws Exception {
-        this.database.close();
+        try {
+            this.completeWork(true);
+            final DirtyTracker tracker = this.database.getTracker();
+            if (tracker != null) {
+                tracker.clear();
+            }
+        } finally {
+            this.database.close();
+        }
     }
 
     public void clear() {
         this.database.clear();
+        final BatchLoader loader = this.database.getBatchLoader();
+        if (loader != null) {
+            loader.clear();
+        }
+        final DirtyTracker tracker = this.database.getTracker();
+        if (tracker != null) {
+            tracker.clear();
+        }
     }
 
     public EntityMeta findMeta(final String labelOrType) {
@@ -240,6 +287,22 @@ public class EntityManager extends AbstractTransactional {
         return this.database;
     }
 
+    public SharedDataCache getSharedCache() {
+        return this.sharedCache;
+    }
+
+    void setSharedCache(final SharedDataCache cache) {
+        this.sharedCache = cache;
+    }
+
+    public QueryResultCache getQueryCache() {
+        return this.queryCache;
+    }
+
+    void setQueryCache(final QueryResultCache cache) {
+        this.queryCache = cache;
+    }
+
     public <T> DatabaseQuery<T> query(final Class<T> clazz, final String nameOrQuery) throws NormandraException {
         return this.query(clazz, nameOrQuery, Collections.emptyMap());
     }
@@ -254,15 +317,118 @@ public class EntityManager extends AbstractTransactional {
             return null;
         }
 
-        return this.database.query(meta, name, parameters);
+        final QueryResultCache queries = this.queryCache;
+        if (null == queries || this.written.containsKey(meta)) {
+            // uncommitted writes must not be visible to other sessions
+            return this.database.query(meta, name, parameters);
+        }
+
+        final String query = resolveQuery(meta, name);
+        final List<Object> keys = queries.getKeys(meta, query, parameters);
+        if (keys != null) {
+            final List<T> cached = this.resolveKeys(clazz, meta, keys);
+            if (cached != null) {
+                return new CachedDatabaseQuery<>(cached);
+            }
+        }
+
+        final long token = queries.begin(meta);
+        final DatabaseQuery<T> results = this.database.query(meta, name, parameters);
+        if (null == results) {
+            return null;
+        }
+        // keys are cached once the caller has read every result
+        return new CachingDatabaseQuery<>(results, meta.getId()::fromEntity, ids -> queries.putKeys(meta, query, parameters, ids, token));
     }
 
     public PropertyQuery query(final String query) throws NormandraException {
-        return this.database.query(query, Collections.emptyMap());
+        return this.query(query, Collections.emptyMap());
     }
 
     public PropertyQuery query(final String query, final Map<String, Object> parameters) throws NormandraException {
-        return this.database.query(query, parameters);
+        return this.query(query, parameters, new Class<?>[0]);
+    }
+
+    /**
+     * run a property query whose cached rows are only invalidated by writes to the given entity types
+     */
+    public PropertyQuery query(final String query, final Map<String, Object> parameters, final Class<?>... types) throws NormandraException {
+        final QueryResultCache queries = this.queryCache;
+        if (null == queries || !this.written.isEmpty()) {
+            return this.database.query(query, parameters);
+        }
+
+        final List<EntityMeta> metas = new ArrayList<>(types.length);
+        for (final Class<?> type : types) {
+            final EntityMeta meta = this.lookup.getMeta(type);
+            if (null == meta) {
+                throw new IllegalArgumentException("Type [" + type + "] is not a registered entity.");
+            }
+            metas.add(meta);
+        }
+
+        final List<Map<String, Object>> cached = queries.getRows(query, parameters);
+        if (cached != null) {
+            return new CachedPropertyQuery(cached);
+        }
+
+        final long token = queries.begin(metas);
+        final PropertyQuery results = this.database.query(query, parameters);
+        if (null == results) {
+            return null;
+        }
+        return new CachingPropertyQuery(results, rows -> queries.putRows(query, parameters, rows, metas, token));
+    }
+
+    private static String resolveQuery(final EntityMeta meta, final String nameOrQuery) {
+        for (final QueryMeta query : meta.getQueries()) {
+            if (query.getName().equalsIgnoreCase(nameOrQuery)) {
+                return query.getQuery();
+            }
+        }
+        return nameOrQuery;
+    }
+
+    /**
+     * @return Returns the entities for the cached keys in cached order, or null if any of them no longer exist.
+     */
+    private <T> List<T> resolveKeys(final Class<T> clazz, final EntityMeta meta, final List<Object> keys) throws NormandraException {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Object> entities = this.database.get(meta, keys.toArray());
+        if (null == entities) {
+            return null;
+        }
+        // sessions return rows in their own order, keep the order the query produced
+        final Map<Object, Object> found = new HashMap<>(entities.size() * 2);
+        for (final Object entity : entities) {
+            final Object key = null == entity ? null : meta.getId().fromEntity(entity);
+            if (key != null) {
+                found.put(DataUtils.normalizeKey(key), entity);
+            }
+        }
+        final List<T> items = new ArrayList<>(keys.size());
+        for (final Object key : keys) {
+            final Object entity = found.get(DataUtils.normalizeKey(key));
+            if (null == entity) {
+                return null;
+            }
+            items.add(clazz.cast(entity));
+        }
+        return items;
+    }
+
+    /**
+     * pre-load entities into this manager's session cache, one batch at a time
+     *
+     * @return Returns the number of entities loaded.
+     */
+    public long warmUp(final CacheWarmup warmup) throws NormandraException {
+        if (null == warmup) {
+            throw new IllegalArgumentException();
+        }
+        return warmup.run(this);
     }
 
     public Object scalarQuery(final String nameOrQuery) throws NormandraException {
@@ -282,7 +448,21 @@ public class EntityManager extends AbstractTransactional {
             return false;
         }
 
-        return this.database.exists(meta, key);
+        final SharedDataCache shared = this.sharedCache;
+        if (shared != null && shared.contains(meta, key)) {
+            return true;
+        }
+
+        final EntityCache cache = this.database.getCache();
+        if (cache.isAbsent(meta, key)) {
+            return false;
+        }
+
+        if (this.database.exists(meta, key)) {
+            return true;
+        }
+        cache.markAbsent(meta, key);
+        return false;
     }
 
     public <T> T get(final Class<? extends T> clazz, final Object key) throws NormandraException {
@@ -298,11 +478,187 @@ public class EntityManager extends AbstractTransactional {
             return null;
         }
 
+        final EntityCache cache = this.database.getCache();
+        if (cache.isAbsent(meta, key)) {
+            return null;
+        }
+
+        final SharedDataCache shared = this.sharedCache;
+        if (shared != null) {
+            // session identity map first, then hydrate from shared column data
+            final Object cached = cache.get(meta, key, clazz);
+            if (cached != null) {
+                return clazz.cast(cached);
+            }
+            final Map<ColumnMeta, Object> data = shared.get(meta, key);
+            if (data != null) {
+                final Object obj = this.database.load(meta, data);
+                if (obj != null) {
+                    return clazz.cast(obj);
+                }
+            }
+        }
+
+        final long token = null == shared ? 0 : shared.begin(meta);
         final Object obj = this.database.get(meta, key);
         if (obj != null) {
+            this.share(meta, key, obj, token);
             return clazz.cast(obj);
         }
 
+        cache.markAbsent(meta, key);
+        return null;
+    }
+
+    /**
+     * get many entities by key, serving what it can from cache and fetching the remainder in one batch
+     *
+     * @return Returns found entities keyed in the order of the requested keys, duplicate and null keys are ignored.
+     */
+    public <T> Map<Object, T> getAll(final Class<T> clazz, final Collection<?> keys) throws NormandraException {
+        if (null == clazz) {
+            throw new IllegalArgumentException();
+        }
+        if (null == keys || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final EntityMeta meta = this.lookup.getMeta(clazz);
+        if (null == meta) {
+            return Collections.emptyMap();
+        }
+
+        final EntityCache cache = this.database.getCache();
+        final Set<Object> unique = new LinkedHashSet<>(keys.size());
+        for (final Object key : keys) {
+            if (key != null && !cache.isAbsent(meta, key)) {
+                unique.add(key);
+            }
+        }
+        if (unique.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<Object, T> found = new HashMap<>(unique.size() * 2);
+        final Map<Object, T> cached = cache.find(meta, unique, clazz);
+        if (cached != null) {
+            found.putAll(cached);
+        }
+
+        final List<Object> misses = new ArrayList<>(unique.size() - found.size());
+        final SharedDataCache shared = this.sharedCache;
+        for (final Object key : unique) {
+            if (found.containsKey(key)) {
+                continue;
+            }
+            final Map<ColumnMeta, Object> data = null == shared ? null : shared.get(meta, key);
+            final Object obj = null == data ? null : this.database.load(meta, data);
+            if (obj != null) {
+                found.put(key, clazz.cast(obj));
+            } else {
+                misses.add(key);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            // match loaded entities back to the requested keys, which may differ in type from the entity keys
+            final Map<Object, List<Object>> requested = new HashMap<>(misses.size() * 2);
+            for (final Object key : misses) {
+                requested.computeIfAbsent(DataUtils.normalizeKey(key), k -> new ArrayList<>(1)).add(key);
+            }
+            final long token = null == shared ? 0 : shared.begin(meta);
+            final List<Object> loaded = this.database.get(meta, misses.toArray());
+            if (loaded != null) {
+                for (final Object obj : loaded) {
+                    if (null == obj) {
+                        continue;
+                    }
+                    final Object key = meta.getId().fromEntity(obj);
+                    if (key != null) {
+                        cache.put(meta, key, obj);
+                        this.share(meta, key, obj, token);
+                        final List<Object> matched = requested.remove(DataUtils.normalizeKey(key));
+                        if (matched != null) {
+                            matched.forEach(k -> found.put(k, clazz.cast(obj)));
+                        }
+                    }
+                }
+            }
+            for (final List<Object> absent : requested.values()) {
+                absent.forEach(k -> cache.markAbsent(meta, k));
+            }
+        }
+
+        final Map<Object, T> result = new LinkedHashMap<>(found.size() * 2);
+        for (final Object key : unique) {
+            final T item = found.get(key);
+            if (item != null) {
+                result.put(key, item);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * find an entity by the values of a unique index, keyed by column name, checking the session cache before the store
+     */
+    public <T> T findByIndex(final Class<T> clazz, final String index, final Map<String, Object> values) throws NormandraException {
+        if (null == clazz || null == index || null == values) {
+            throw new IllegalArgumentException();
+        }
+
+        final EntityMeta meta = this.lookup.getMeta(clazz);
+        if (null == meta) {
+            return null;
+        }
+        IndexMeta indexMeta = null;
+        for (final IndexMeta item : meta.getIndexed()) {
+            if (item.getName().equalsIgnoreCase(index)) {
+                indexMeta = item;
+                break;
+            }
+        }
+        if (null == indexMeta) {
+            throw new IllegalArgumentException("Index [" + index + "] not found for entity [" + meta + "].");
+        }
+        if (!indexMeta.isUnique()) {
+            throw new IllegalArgumentException("Index [" + index + "] of entity [" + meta + "] is not unique.");
+        }
+
+        final List<Object> columnValues = new ArrayList<>(indexMeta.getColumns().size());
+        for (final ColumnMeta column : indexMeta.getColumns()) {
+            if (!values.containsKey(column.getName())) {
+                throw new IllegalArgumentException("Missing value for column [" + column.getName() + "] of index [" + index + "].");
+            }
+            columnValues.add(values.get(column.getName()));
+        }
+
+        final EntityCache cache = this.database.getCache();
+        final T cached = cache.findByIndex(meta, indexMeta, columnValues, clazz);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long token = null == this.sharedCache ? 0 : this.sharedCache.begin(meta);
+        try (final DatabaseQuery<T> results = this.database.findByIndex(meta, indexMeta, values)) {
+            if (null == results) {
+                return null;
+            }
+            for (final T item : results) {
+                if (item != null) {
+                    final Object key = meta.getId().fromEntity(item);
+                    if (key != null) {
+                        cache.put(meta, key, item);
+                        this.share(meta, key, item, token);
+                    }
+                    return item;
+                }
+            }
+        } catch (final NormandraException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new NormandraException("Unable to find [" + meta + "] by index [" + index + "].", e);
+        }
         return null;
     }
 
@@ -339,6 +695,11 @@ public class EntityManager extends AbstractTransactional {
         }
 
         this.database.delete(meta, element);
+        this.invalidate(meta, element, false);
+        final DirtyTracker tracker = this.database.getTracker();
+        if (tracker != null) {
+            tracker.forget(meta, meta.getId().fromEntity(element));
+        }
     }
 
     public <T> void save(final T element) throws NormandraException {
@@ -353,30 +714,143 @@ public class EntityManager extends AbstractTransactional {
         }
 
         this.database.save(meta, element);
+        this.invalidate(meta, element, true);
+    }
+
+    /**
+     * invalidate cached data for a written entity, now and again once the current unit of work completes
+     */
+    protected final void invalidate(final EntityMeta meta, final Object element, final boolean saved) {
+        final QueryResultCache queries = this.queryCache;
+        if (queries != null) {
+            queries.invalidate(meta);
+        }
+        final Set<Object> keys = this.workDepth > 0 ? this.written.computeIfAbsent(meta, m -> new HashSet<>()) : null;
+        final Object key = meta.getId().fromEntity(element);
+        if (null == key) {
+            return;
+        }
+        final BatchLoader loader = this.database.getBatchLoader();
+        if (loader != null) {
+            // a sibling fetched earlier no longer matches what was written
+            loader.forget(meta, key);
+        }
+        final SharedDataCache shared = this.sharedCache;
+        if (shared != null) {
+            shared.invalidate(meta, key);
+            if (keys != null) {
+                keys.add(key);
+            }
+        }
+        if (saved) {
+            // key now exists, drop any negative lookup
+            this.database.getCache().clearAbsent(meta, key);
+        }
+    }
+
+    /**
+     * store an entity read from the store in the shared cache, unless it was written by the current unit of work
+     */
+    private void share(final EntityMeta meta, final Object key, final Object entity, final long token) {
+        final SharedDataCache shared = this.sharedCache;
+        if (null == shared) {
+            return;
+        }
+        final Set<Object> keys = this.written.get(meta);
+        if (keys != null && keys.contains(key)) {
+            // not yet committed, other sessions must not see it
+            return;
+        }
+        shared.put(meta, entity, this.database, token);
+    }
+
+    /**
+     * invalidate types and keys written by the unit of work again, once the outermost unit of work has completed
+     * <p>
+     * Another session may have re-read the previous rows or query results between the write and the commit - they are
+     * dropped here, and the invalidation rejects any reader which started before the commit.
+     */
+    private void completeWork(final boolean all) {
+        this.workDepth = all ? 0 : Math.max(0, this.workDepth - 1);
+        if (this.workDepth > 0 || this.written.isEmpty()) {
+            return;
+        }
+        final QueryResultCache queries = this.queryCache;
+        if (queries != null) {
+            this.written.keySet().forEach(queries::invalidate);
+        }
+        final SharedDataCache shared = this.sharedCache;
+        if (shared != null) {
+            for (final Map.Entry<EntityMeta, Set<Object>> entry : this.written.entrySet()) {
+                for (final Object key : entry.getValue()) {
+                    shared.invalidate(entry.getKey(), key);
+                }
+            }
+        }
+        this.written.clear();
     }
 
     @Override
     public Transaction beginTransaction() throws NormandraException {
-        return this.database.beginTransaction();
+        // run the unit of work through this manager, so cached data is invalidated once it completes
+        return new Transaction(this);
     }
 
     @Override
     public void beginWork() throws NormandraException {
         this.database.beginWork();
+        this.workDepth++;
+        final DirtyTracker tracker = this.database.getTracker();
+        if (tracker != null) {
+            tracker.beginWork();
+        }
     }
 
     @Override
     public void commitWork() throws NormandraException {
-        this.database.commitWork();
+        boolean committed = false;
+        try {
+            this.database.commitWork();
+            committed = true;
+        } finally {
+            this.completeTracking(committed);
+            this.completeWork(false);
+        }
     }
 
     @Override
     public void rollbackWork() throws NormandraException {
-        this.database.rollbackWork();
+        try {
+            this.database.rollbackWork();
+        } finally {
+            this.completeTracking(false);
+            this.completeWork(false);
+        }
     }
 
     @Override
     public void concludeWork() throws NormandraException {
-        this.database.concludeWork();
+        try {
+            this.database.concludeWork();
+        } finally {
+            // not committed, writes are discarded
+            this.completeTracking(false);
+            this.completeWork(false);
+        }
+    }
+
+    /**
+     * keep values saved by the unit of work as the base of later dirty checks only once they are committed
+     */
+    private void completeTracking(final boolean committed) {
+        final DirtyTracker tracker = this.database.getTracker();
+        if (null == tracker) {
+            return;
+        }
+        if (committed) {
+            tracker.commitWork();
+        } else {
+            tracker.rollbackWork();
+        }
     }
 }
@@ -194,9 +194,15 @@
 
 package org.normandra;
 
+import org.normandra.cache.CacheSnapshot;
+import org.normandra.cache.QueryResultCache;
+import org.normandra.cache.SharedDataCache;
 import org.normandra.meta.DatabaseMeta;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * entity manager factory, a core constructor
@@ -208,6 +214,12 @@ public class EntityManagerFactory {
 
     private final DatabaseConstruction constructionMode;
 
+    private SharedDataCache sharedCache = null;
+
+    private QueryResultCache queryCache = null;
+
+    private final List<CacheSnapshot> snapshots = new ArrayList<>();
+
     private boolean configured = false;
 
     public EntityManagerFactory(final Database db, final DatabaseMeta meta, final DatabaseConstruction constructionMode) {
@@ -218,7 +230,85 @@ public class EntityManagerFactory {
 
     public EntityManager create() throws NormandraException {
         this.ensureDatabase();
-        return new EntityManager(this.database.createSession(), this.databaseMeta);
+        return this.configure(new EntityManager(this.database.createSession(), this.databaseMeta));
+    }
+
+    /**
+     * pre-load entities into the shared cache in parallel batches, typically before a service starts taking traffic
+     *
+     * @return Returns the number of entities loaded.
+     */
+    public long warmUp(final CacheWarmup warmup) throws NormandraException {
+        if (null == warmup) {
+            throw new IllegalArgumentException();
+        }
+        this.ensureDatabase();
+        return warmup.run(this);
+    }
+
+    /**
+     * enable a second-level cache of column data shared by all entity managers created by this factory
+     */
+    public EntityManagerFactory withSharedCache(final SharedDataCache cache) {
+        this.sharedCache = cache;
+        return this;
+    }
+
+    public SharedDataCache getSharedCache() {
+        return this.sharedCache;
+    }
+
+    /**
+     * enable a query result cache shared by all entity managers created by this factory
+     */
+    public EntityManagerFactory withQueryCache(final QueryResultCache cache) {
+        this.queryCache = cache;
+        return this;
+    }
+
+    public QueryResultCache getQueryCache() {
+        return this.queryCache;
+    }
+
+    /**
+     * write the shared cache to a snapshot file, to be restored on the next start
+     *
+     * @return Returns the number of entries written.
+     */
+    public long saveSnapshot(final Path file) throws IOException {
+        if (null == this.sharedCache) {
+            throw new IllegalStateException("No shared cache is configured.");
+        }
+        return CacheSnapshot.write(file, this.databaseMeta, this.sharedCache);
+    }
+
+    /**
+     * restore the shared cache from a snapshot file, ignoring snapshots written for different meta-data
+     * <p>
+     * The entries of each type are decoded on the first lookup of that type; the snapshot is kept open until this factory
+     * is closed.
+     *
+     * @return Returns the number of entries in the snapshot.
+     */
+    public long loadSnapshot(final Path file) throws IOException {
+        if (null == this.sharedCache) {
+            throw new IllegalStateException("No shared cache is configured.");
+        }
+        final CacheSnapshot snapshot = CacheSnapshot.open(file, this.databaseMeta);
+        if (null == snapshot) {
+            return 0;
+        }
+        synchronized (this.snapshots) {
+            this.snapshots.add(snapshot);
+        }
+        snapshot.attach(this.sharedCache, Runtime.getRuntime().availableProcessors());
+        return snapshot.size();
+    }
+
+    protected <T extends EntityManager> T configure(final T manager) {
+        manager.setSharedCache(this.sharedCache);
+        manager.setQueryCache(this.queryCache);
+        return manager;
     }
 
     synchronized protected final void ensureDatabase() throws NormandraException {
@@ -236,6 +326,18 @@ public class EntityManagerFactory {
     }
 
     public void close() throws IOException {
+        if (this.sharedCache != null) {
+            this.sharedCache.clear();
+        }
+        if (this.queryCache != null) {
+            this.queryCache.clear();
+        }
+        synchronized (this.snapshots) {
+            for (final CacheSnapshot snapshot : this.snapshots) {
+                snapshot.close();
+            }
+            this.snapshots.clear();
+        }
         this.database.close();
     }
 }
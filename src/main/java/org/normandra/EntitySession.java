@@ -194,6 +194,7 @@
 
 package org.normandra;
 
+import org.normandra.association.BatchLoader;
 import org.normandra.meta.ColumnMeta;
 import org.normandra.meta.EntityMeta;
 
@@ -211,4 +212,11 @@ public interface EntitySession extends AutoCloseable {
     Object get(EntityMeta meta, Object key) throws NormandraException;
     List<Object> get(EntityMeta meta, Object... keys) throws NormandraException;
     Object load(EntityMeta meta, Map<ColumnMeta, Object> data) throws NormandraException;
+
+    /**
+     * @return Returns the loader fetching lazy associations of this session in batches, or null to load them one by one.
+     */
+    default BatchLoader getBatchLoader() {
+        return null;
+    }
 }
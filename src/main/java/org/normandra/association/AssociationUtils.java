@@ -198,6 +198,7 @@ import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyFactory;
 import javassist.util.proxy.ProxyObject;
 import org.normandra.EntitySession;
+import org.normandra.data.Instantiators;
 import org.normandra.meta.EntityMeta;
 import org.normandra.util.CompositeClassLoader;
 
@@ -225,6 +226,21 @@ public class AssociationUtils {
         return handler.isLoaded();
     }
 
+    /**
+     * @return Returns the key of the entity an unloaded proxy stands for, or null if loaded or not a proxy.
+     */
+    public static Object getKey(final Object element) {
+        if (!isProxy(element)) {
+            return null;
+        }
+        final LazyAssociationHandler handler = (LazyAssociationHandler) ((ProxyObject) element).getHandler();
+        if (handler.isLoaded()) {
+            return null;
+        }
+        final AssociationAccessor accessor = handler.getAccessor();
+        return accessor instanceof ManyToOneAccessor ? ((ManyToOneAccessor) accessor).getKey() : null;
+    }
+
     public static boolean isProxy(final Object element) {
         if (null == element) {
             return false;
@@ -239,6 +255,13 @@ public class AssociationUtils {
     }
 
     public static Object createProxy(final EntityMeta meta, final Object key, final EntitySession session, final ElementIdentity factory) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        return createProxy(meta, key, session, factory, 0);
+    }
+
+    /**
+     * @param batchSize the number of sibling proxies loaded together, or 0 for the session default
+     */
+    public static Object createProxy(final EntityMeta meta, final Object key, final EntitySession session, final ElementIdentity factory, final int batchSize) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         if (null == meta) {
             return null;
         }
@@ -265,12 +288,12 @@ public class AssociationUtils {
             proxies.put(clazz, proxy);
         }
 
-        final Object instance = proxy.newInstance();
+        final Object instance = Instantiators.newInstance(proxy);
         if (null == instance) {
             return null;
         }
 
-        final AssociationAccessor accessor = new ManyToOneAccessor(key, session, factory);
+        final AssociationAccessor accessor = new ManyToOneAccessor(meta, key, session, factory, batchSize);
         final LazyAssociationHandler handler = new LazyAssociationHandler(meta, accessor, session);
         ((ProxyObject) instance).setHandler(handler);
         return clazz.cast(instance);
@@ -242,6 +242,10 @@ public class LazyAssociationHandler implements MethodHandler {
         return this.loaded.get();
     }
 
+    public AssociationAccessor getAccessor() {
+        return this.accessor;
+    }
+
     @Override
     public Object invoke(final Object self, final Method thisMethod, final Method proceed, final Object[] args) throws Throwable {
         boolean skip = false;
@@ -195,9 +195,12 @@
 package org.normandra.association;
 
 import org.normandra.EntitySession;
+import org.normandra.NormandraException;
+import org.normandra.data.BasicDataHolder;
 import org.normandra.data.DataHolder;
 import org.normandra.meta.EntityMeta;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -219,6 +222,8 @@ abstract public class LazyEntityCollection<T> implements LazyLoadedCollection<T>
 
     protected final ElementIdentity<T> elementFactory;
 
+    protected final int batchSize;
+
     private Collection<T> entities;
 
     private final AtomicBoolean loaded = new AtomicBoolean(false);
@@ -232,6 +237,38 @@ abstract public class LazyEntityCollection<T> implements LazyLoadedCollection<T>
         this.entity = meta;
         this.elementFactory = ef;
         this.collectionFactory = cf;
+        this.batchSize = 0;
+    }
+
+    /**
+     * a lazy collection loaded in batches with its siblings, registering keys already in memory with the batch loader
+     * of the session
+     *
+     * @param batchSize the batch size, or 0 for the default of the batch loader
+     */
+    public LazyEntityCollection(final EntitySession session, final EntityMeta meta, final DataHolder data, ElementIdentity<T> ef, final CollectionFactory<T> cf, final int batchSize) {
+        if (null == data || null == session || null == meta || null == ef || null == cf) {
+            throw new IllegalArgumentException();
+        }
+        this.data = data;
+        this.session = session;
+        this.entity = meta;
+        this.elementFactory = ef;
+        this.collectionFactory = cf;
+        this.batchSize = batchSize;
+
+        // holders which would query for their keys are left alone
+        final BatchLoader loader = session.getBatchLoader();
+        if (loader != null && data instanceof BasicDataHolder && !data.isEmpty()) {
+            try {
+                final Object value = data.get();
+                if (value instanceof Collection && !(value instanceof LazyEntityCollection)) {
+                    loader.register(meta, (Collection<?>) value);
+                }
+            } catch (final NormandraException e) {
+                throw new IllegalStateException("Unable to read keys of lazy entity collection from [" + data + "].", e);
+            }
+        }
     }
 
     @Override
@@ -268,7 +305,10 @@ abstract public class LazyEntityCollection<T> implements LazyLoadedCollection<T>
             }
 
             final Object[] keys = ((Collection) value).toArray();
-            final List<T> results = this.elementFactory.toEntities(this.session, keys);
+            final BatchLoader loader = this.session.getBatchLoader();
+            final List<T> results = loader != null ?
+                    (List<T>) loader.get(this.entity, this.elementFactory, Arrays.asList(keys), this.batchSize) :
+                    this.elementFactory.toEntities(this.session, keys);
             this.entities = this.collectionFactory.create(results.size());
             this.entities.addAll(results);
             return this.entities;
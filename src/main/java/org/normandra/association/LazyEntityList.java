@@ -213,6 +213,11 @@ public class LazyEntityList<T> extends LazyEntityCollection<T> implements List<T
         super(session, meta, data, factory, ArrayList::new);
     }
 
+    public LazyEntityList(EntitySession session, EntityMeta meta, DataHolder data, ElementIdentity<T> factory, int batchSize)
+    {
+        super(session, meta, data, factory, ArrayList::new, batchSize);
+    }
+
     @Override
     public LazyEntityList<T> duplicate()
     {
@@ -214,6 +214,11 @@ public class LazyEntitySet<T> extends LazyEntityCollection<T> implements Set<T>
         super(session, meta, data, factory, HashSet::new);
     }
 
+    public LazyEntitySet(EntitySession session, EntityMeta meta, DataHolder data, ElementIdentity<T> factory, int batchSize)
+    {
+        super(session, meta, data, factory, HashSet::new, batchSize);
+    }
+
     @Override
     public LazyEntitySet<T> duplicate()
     {
@@ -196,6 +196,7 @@ package org.normandra.association;
 
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
+import org.normandra.meta.EntityMeta;
 
 /**
  * a single entity accessor - for one-to-one or many-to-one n relationships
@@ -207,17 +208,43 @@ public class ManyToOneAccessor implements AssociationAccessor {
 
     private final EntitySession session;
 
+    private final EntityMeta meta;
+
+    private final int batchSize;
+
     public ManyToOneAccessor(final Object key, final EntitySession session, final ElementIdentity factory) {
+        this(null, key, session, factory, 0);
+    }
+
+    /**
+     * @param meta      the associated entity, registered with the batch loader of the session if not null
+     * @param batchSize the batch size, or 0 for the default of the batch loader
+     */
+    public ManyToOneAccessor(final EntityMeta meta, final Object key, final EntitySession session, final ElementIdentity factory, final int batchSize) {
         if (null == key || null == session || null == factory) {
             throw new IllegalArgumentException();
         }
         this.key = key;
         this.session = session;
         this.factory = factory;
+        this.meta = meta;
+        this.batchSize = batchSize;
+        final BatchLoader loader = null == meta ? null : session.getBatchLoader();
+        if (loader != null) {
+            loader.register(meta, key);
+        }
+    }
+
+    public Object getKey() {
+        return this.key;
     }
 
     @Override
     public Object get() throws NormandraException {
+        final BatchLoader loader = null == this.meta ? null : this.session.getBatchLoader();
+        if (loader != null) {
+            return loader.get(this.meta, this.factory, this.key, this.batchSize);
+        }
         return this.factory.toEntity(this.session, this.key);
     }
 }
@@ -0,0 +1,736 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.meta.EntityMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * a bounded in-memory cache, limiting entities by count or estimated weight (per entity type and overall)
+ * <p>
+ * Each entity type is held in its own region, made up of a small lru admission window in front of a segmented lru
+ * (probation and protected) main space.  Entries leaving the window compete with the main space's eviction victim,
+ * and are only admitted when their estimated access frequency (via a shared tiny-lfu sketch) is higher - so scans of
+ * one-time reads do not flush the hot set.  All operations are synchronized.
+ */
+public class BoundedMemoryCache implements EntityCache {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedMemoryCache.class);
+
+    private static final double WINDOW_RATIO = 0.01;
+
+    private static final double PROTECTED_RATIO = 0.80;
+
+    private static final int WINDOW = 0;
+
+    private static final int PROBATION = 1;
+
+    private static final int PROTECTED = 2;
+
+    private final Map<EntityMeta, Region> regions = new TreeMap<>();
+
+    private final Map<EntityMeta, Long> typeMaximums;
+
+    private final EntityWeigher weigher;
+
+    private long maximum;
+
+    private final FrequencySketch sketch;
+
+    private final CacheCounters counters = new CacheCounters();
+
+    private long weight = 0;
+
+    private long count = 0;
+
+    public static class Factory implements EntityCacheFactory {
+        private final Map<EntityMeta, Long> typeMaximums = new TreeMap<>();
+
+        private EntityWeigher weigher = EntityWeigher.singleton();
+
+        private long maximum = Long.MAX_VALUE;
+
+        public Factory withMaximumSize(final long size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("Maximum size cannot be negative.");
+            }
+            this.maximum = size;
+            this.weigher = EntityWeigher.singleton();
+            return this;
+        }
+
+        public Factory withMaximumWeight(final long weight, final EntityWeigher w) {
+            if (weight < 0 || null == w) {
+                throw new IllegalArgumentException();
+            }
+            this.maximum = weight;
+            this.weigher = w;
+            return this;
+        }
+
+        public Factory withTypeMaximum(final EntityMeta meta, final long max) {
+            if (null == meta || max < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.typeMaximums.put(meta, max);
+            return this;
+        }
+
+        @Override
+        public EntityCache create() {
+            return new BoundedMemoryCache(this.maximum, this.weigher, this.typeMaximums);
+        }
+    }
+
+    public BoundedMemoryCache(final long maximumSize) {
+        this(maximumSize, EntityWeigher.singleton(), Collections.emptyMap());
+    }
+
+    public BoundedMemoryCache(final long maximum, final EntityWeigher weigher, final Map<EntityMeta, Long> typeMaximums) {
+        if (maximum < 0 || null == weigher) {
+            throw new IllegalArgumentException();
+        }
+        this.maximum = maximum;
+        this.weigher = weigher;
+        this.typeMaximums = new TreeMap<>(typeMaximums != null ? typeMaximums : Collections.emptyMap());
+        long expected = maximum;
+        for (final Long typeMaximum : this.typeMaximums.values()) {
+            expected = Math.min(Long.MAX_VALUE, expected + typeMaximum);
+        }
+        this.sketch = new FrequencySketch(Math.min(expected, 1024));
+    }
+
+    synchronized public long getMaximum() {
+        return this.maximum;
+    }
+
+    /**
+     * change the overall bound, evicting immediately if the cache is now over it
+     */
+    @Override
+    synchronized public boolean resize(final long max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Maximum cannot be negative.");
+        }
+        this.maximum = max;
+        for (final Map.Entry<EntityMeta, Region> entry : this.regions.entrySet()) {
+            final Long typeMaximum = this.typeMaximums.get(entry.getKey());
+            entry.getValue().setMaximum(Math.min(max, typeMaximum != null ? typeMaximum : Long.MAX_VALUE));
+        }
+        for (final Region region : new ArrayList<>(this.regions.values())) {
+            this.evict(region);
+        }
+        return true;
+    }
+
+    @Override
+    synchronized public Map<EntityMeta, CacheStats> getStats() {
+        return this.counters.snapshot(meta -> {
+            final Region region = this.regions.get(meta);
+            return null == region ? 0 : region.nodes.size();
+        });
+    }
+
+    synchronized public long getWeight() {
+        return this.weight;
+    }
+
+    synchronized public long size() {
+        return this.count;
+    }
+
+    @Override
+    synchronized public void clear() {
+        this.regions.clear();
+        this.weight = 0;
+        this.count = 0;
+    }
+
+    @Override
+    synchronized public void clearType(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        final Region region = this.regions.remove(meta);
+        if (region != null) {
+            this.weight -= region.weight;
+            this.count -= region.nodes.size();
+        }
+    }
+
+    @Override
+    synchronized public <T> T get(final EntityMeta meta, final Object key, final Class<T> clazz) {
+        if (null == meta || null == key) {
+            return null;
+        }
+
+        final Region region = this.regions.get(meta);
+        final Object instance = null == region ? null : region.read(key);
+        if (null == instance) {
+            this.counters.of(meta).miss();
+            return null;
+        }
+        this.counters.of(meta).hit();
+        return cast(instance, clazz);
+    }
+
+    @Override
+    synchronized public <T> Map<Object, T> find(final EntityMeta meta, final Collection<?> keys, final Class<T> clazz) {
+        if (null == meta || null == keys || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final CacheCounters.Counters stats = this.counters.of(meta);
+        final Region region = this.regions.get(meta);
+        if (null == region) {
+            stats.findAndLookup(keys.size(), 0);
+            return Collections.emptyMap();
+        }
+
+        final Map<Object, T> map = new HashMap<>(keys.size());
+        for (final Object key : keys) {
+            if (key != null) {
+                final T item = cast(region.read(key), clazz);
+                if (item != null) {
+                    map.put(key, item);
+                }
+            }
+        }
+        stats.findAndLookup(keys.size(), map.size());
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    synchronized public <T> Iterable<T> listByType(final EntityMeta meta, final Class<T> clazz) {
+        if (null == meta) {
+            return Collections.emptyList();
+        }
+
+        final Region region = this.regions.get(meta);
+        if (null == region || region.nodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<T> items = new ArrayList<>(region.nodes.size());
+        for (final Node node : region.nodes.values()) {
+            final T item = cast(node.value, clazz);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    @Override
+    synchronized public boolean remove(final EntityMeta meta, final Object key) {
+        if (null == meta || null == meta.getId() || null == key) {
+            return false;
+        }
+
+        final Region region = this.regions.get(meta);
+        if (null == region) {
+            return false;
+        }
+
+        final Node node = region.nodes.get(key);
+        if (null == node) {
+            return false;
+        }
+        region.discard(node);
+        return true;
+    }
+
+    @Override
+    synchronized public boolean put(final EntityMeta meta, final Object key, final Object instance) {
+        if (null == meta || null == key) {
+            return false;
+        }
+
+        if (null == instance) {
+            return this.remove(meta, key);
+        }
+
+        final long entityWeight;
+        try {
+            entityWeight = Math.max(0, this.weigher.weigh(meta, key, instance));
+        } catch (final Exception e) {
+            logger.warn("Unable to weigh cache entity [" + instance + "] of type [" + meta + "].", e);
+            return false;
+        }
+
+        Region region = this.regions.get(meta);
+        if (null == region) {
+            final Long typeMaximum = this.typeMaximums.get(meta);
+            region = new Region(meta, Math.min(this.maximum, typeMaximum != null ? typeMaximum : Long.MAX_VALUE));
+            this.regions.put(meta, region);
+        }
+
+        region.write(key, instance, entityWeight);
+        this.counters.of(meta).put();
+        this.evict(region);
+        return region.nodes.containsKey(key);
+    }
+
+    private void evict(final Region region) {
+        // drain overflow from the admission window into probation
+        region.drainWindow();
+
+        // enforce per-type bound
+        while (region.weight > region.maximum) {
+            if (!region.evictOne()) {
+                break;
+            }
+        }
+
+        // enforce overall bound, preferring the region being written unless it is under its fair share
+        while (this.weight > this.maximum) {
+            Region target = region;
+            if (region.nodes.isEmpty() || region.weight * this.regions.size() < this.maximum) {
+                target = this.heaviestRegion();
+            }
+            if (null == target || !target.evictOne()) {
+                break;
+            }
+        }
+    }
+
+    private Region heaviestRegion() {
+        Region heaviest = null;
+        for (final Region region : this.regions.values()) {
+            if (!region.nodes.isEmpty() && (null == heaviest || region.weight > heaviest.weight)) {
+                heaviest = region;
+            }
+        }
+        return heaviest;
+    }
+
+    private static <T> T cast(final Object instance, final Class<T> clazz) {
+        if (null == instance) {
+            return null;
+        }
+
+        if (null == clazz || Object.class.equals(clazz)) {
+            return (T) instance;
+        }
+
+        try {
+            return clazz.cast(instance);
+        } catch (final ClassCastException e) {
+            logger.warn("Unable to convert [" + instance + "] to type [" + clazz + "].");
+            return null;
+        }
+    }
+
+    private static final class Node {
+        private final Object key;
+
+        private Object value;
+
+        private long weight;
+
+        private int queue;
+
+        private Node prev;
+
+        private Node next;
+
+        private Node(final Object key, final Object value, final long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        private static Node sentinel() {
+            final Node node = new Node(null, null, 0);
+            node.prev = node;
+            node.next = node;
+            return node;
+        }
+
+        private void unlink() {
+            this.prev.next = this.next;
+            this.next.prev = this.prev;
+            this.prev = null;
+            this.next = null;
+        }
+
+        private void linkBefore(final Node sentinel) {
+            this.prev = sentinel.prev;
+            this.next = sentinel;
+            sentinel.prev.next = this;
+            sentinel.prev = this;
+        }
+    }
+
+    private final class Region {
+        private final EntityMeta meta;
+
+        private final Map<Object, Node> nodes = new HashMap<>();
+
+        private final Node window = Node.sentinel();
+
+        private final Node probation = Node.sentinel();
+
+        private final Node protect = Node.sentinel();
+
+        private final int seed;
+
+        private long maximum;
+
+        private long windowMaximum;
+
+        private long protectedMaximum;
+
+        private long weight = 0;
+
+        private long windowWeight = 0;
+
+        private long protectedWeight = 0;
+
+        private Region(final EntityMeta meta, final long maximum) {
+            this.meta = meta;
+            this.seed = meta.getName().hashCode();
+            this.setMaximum(maximum);
+        }
+
+        private void setMaximum(final long maximum) {
+            this.maximum = maximum;
+            if (maximum == Long.MAX_VALUE) {
+                this.windowMaximum = Long.MAX_VALUE;
+                this.protectedMaximum = Long.MAX_VALUE;
+            } else {
+                this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_RATIO));
+                this.protectedMaximum = (long) ((maximum - this.windowMaximum) * PROTECTED_RATIO);
+            }
+        }
+
+        private int hash(final Object key) {
+            return 31 * this.seed + key.hashCode();
+        }
+
+        private Object read(final Object key) {
+            sketch.increment(this.hash(key));
+            final Node node = this.nodes.get(key);
+            if (null == node) {
+                return null;
+            }
+            this.onAccess(node);
+            return node.value;
+        }
+
+        private void write(final Object key, final Object value, final long entityWeight) {
+            sketch.increment(this.hash(key));
+            final Node existing = this.nodes.get(key);
+            if (existing != null) {
+                final long delta = entityWeight - existing.weight;
+                existing.value = value;
+                existing.weight = entityWeight;
+                this.weight += delta;
+                BoundedMemoryCache.this.weight += delta;
+                if (WINDOW == existing.queue) {
+                    this.windowWeight += delta;
+                } else if (PROTECTED == existing.queue) {
+                    this.protectedWeight += delta;
+                }
+                this.onAccess(existing);
+                return;
+            }
+
+            final Node node = new Node(key, value, entityWeight);
+            node.queue = WINDOW;
+            node.linkBefore(this.window);
+            this.nodes.put(key, node);
+            this.windowWeight += entityWeight;
+            this.weight += entityWeight;
+            BoundedMemoryCache.this.weight += entityWeight;
+            BoundedMemoryCache.this.count++;
+            if (BoundedMemoryCache.this.count > sketch.capacity()) {
+                sketch.ensureCapacity(2 * BoundedMemoryCache.this.count);
+            }
+        }
+
+        private void onAccess(final Node node) {
+            if (WINDOW == node.queue) {
+                node.unlink();
+                node.linkBefore(this.window);
+            } else if (PROBATION == node.queue) {
+                // promote to protected, demoting the protected lru when over capacity
+                node.unlink();
+                node.queue = PROTECTED;
+                node.linkBefore(this.protect);
+                this.protectedWeight += node.weight;
+                while (this.protectedWeight > this.protectedMaximum) {
+                    final Node demoted = first(this.protect);
+                    if (null == demoted || demoted == node) {
+                        break;
+                    }
+                    demoted.unlink();
+                    this.protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    demoted.linkBefore(this.probation);
+                }
+            } else {
+                node.unlink();
+                node.linkBefore(this.protect);
+            }
+        }
+
+        private void drainWindow() {
+            while (this.windowWeight > this.windowMaximum) {
+                final Node candidate = first(this.window);
+                if (null == candidate) {
+                    break;
+                }
+                candidate.unlink();
+                this.windowWeight -= candidate.weight;
+                candidate.queue = PROBATION;
+                candidate.linkBefore(this.probation);
+            }
+        }
+
+        private boolean evictOne() {
+            final Node victim = first(this.probation);
+            if (null == victim) {
+                // nothing on probation, fall back to protected then window lru
+                Node fallback = first(this.protect);
+                if (null == fallback) {
+                    fallback = first(this.window);
+                }
+                if (null == fallback) {
+                    return false;
+                }
+                this.discard(fallback);
+                counters.of(this.meta).evict();
+                return true;
+            }
+
+            final Node candidate = this.probation.prev;
+            counters.of(this.meta).evict();
+            if (candidate == victim) {
+                this.discard(victim);
+                return true;
+            }
+
+            // tiny-lfu admission - the candidate replaces the victim only if accessed more often
+            final int candidateFrequency = sketch.frequency(this.hash(candidate.key));
+            final int victimFrequency = sketch.frequency(this.hash(victim.key));
+            if (candidateFrequency > victimFrequency) {
+                this.discard(victim);
+            } else {
+                this.discard(candidate);
+            }
+            return true;
+        }
+
+        private void discard(final Node node) {
+            if (WINDOW == node.queue) {
+                this.windowWeight -= node.weight;
+            } else if (PROTECTED == node.queue) {
+                this.protectedWeight -= node.weight;
+            }
+            node.unlink();
+            this.nodes.remove(node.key);
+            this.weight -= node.weight;
+            BoundedMemoryCache.this.weight -= node.weight;
+            BoundedMemoryCache.this.count--;
+        }
+
+        private Node first(final Node sentinel) {
+            return sentinel.next != sentinel ? sentinel.next : null;
+        }
+    }
+}
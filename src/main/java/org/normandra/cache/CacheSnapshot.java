@@ -0,0 +1,705 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.DatabaseMeta;
+import org.normandra.meta.EntityMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * a file snapshot of cached column data, used to restart with a warm cache
+ * <p>
+ * Entries are written as column data in blocks of up to {@link #BLOCK_SIZE} entities, followed by a block index.  The
+ * file header carries a fingerprint of the {@link DatabaseMeta} it was written against; a snapshot is rejected when
+ * opened against different meta-data.  Opening a snapshot only reads the header and index - blocks are memory-mapped
+ * and decoded in parallel when loaded.  An attached snapshot decodes the blocks of a type on the first lookup of that
+ * type, and stops once the shared cache is full.
+ */
+public class CacheSnapshot implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x4e524d53;
+
+    private static final int VERSION = 1;
+
+    public static final int BLOCK_SIZE = 1024;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final String fingerprint;
+
+    private final List<EntityMeta> types;
+
+    private final List<List<ColumnMeta>> columns;
+
+    private final List<Block> blocks;
+
+    private static final class Block {
+        private final int type;
+
+        private final long offset;
+
+        private final int length;
+
+        private final int count;
+
+        private Block(final int type, final long offset, final int length, final int count) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, count);
+            return count;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long position = 0;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+            this.position++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len);
+            this.position += len;
+        }
+    }
+
+    /**
+     * streams blocks of encoded entries to a snapshot file
+     */
+    private static final class Writer {
+        private final CountingOutputStream counter;
+
+        private final DataOutputStream out;
+
+        private final List<EntityMeta> types = new ArrayList<>();
+
+        private final List<Block> blocks = new ArrayList<>();
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+        private final DataOutputStream record = new DataOutputStream(this.buffer);
+
+        private List<ColumnMeta> columns = Collections.emptyList();
+
+        private int count = 0;
+
+        private long total = 0;
+
+        private Writer(final OutputStream stream, final String fingerprint) throws IOException {
+            this.counter = new CountingOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            this.out = new DataOutputStream(this.counter);
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeUTF(fingerprint);
+        }
+
+        private void begin(final EntityMeta meta) throws IOException {
+            this.flush();
+            this.types.add(meta);
+            this.columns = new ArrayList<>(meta.getColumns());
+        }
+
+        private boolean add(final Object key, final Map<ColumnMeta, Object> data) throws IOException {
+            if (null == key || null == data || !ColumnCodec.isSupported(key)) {
+                return false;
+            }
+            for (final Object value : data.values()) {
+                if (!ColumnCodec.isSupported(value)) {
+                    return false;
+                }
+            }
+            ColumnCodec.write(this.record, key);
+            ColumnCodec.writeSize(this.record, data.size());
+            for (final Map.Entry<ColumnMeta, Object> entry : data.entrySet()) {
+                ColumnCodec.writeSize(this.record, this.columns.indexOf(entry.getKey()));
+                ColumnCodec.write(this.record, entry.getValue());
+            }
+            this.count++;
+            this.total++;
+            if (this.count >= BLOCK_SIZE) {
+                this.flush();
+            }
+            return true;
+        }
+
+        private void flush() throws IOException {
+            if (this.count <= 0) {
+                return;
+            }
+            this.record.flush();
+            this.blocks.add(new Block(this.types.size() - 1, this.counter.position, this.buffer.size(), this.count));
+            this.buffer.writeTo(this.out);
+            this.buffer.reset();
+            this.count = 0;
+        }
+
+        private void finish() throws IOException {
+            this.flush();
+            final long index = this.counter.position;
+            this.out.writeInt(this.types.size());
+            for (final EntityMeta meta : this.types) {
+                this.out.writeUTF(meta.getName());
+                this.out.writeInt(meta.getColumns().size());
+                for (final ColumnMeta column : meta.getColumns()) {
+                    this.out.writeUTF(column.getName());
+                }
+            }
+            this.out.writeInt(this.blocks.size());
+            for (final Block block : this.blocks) {
+                this.out.writeInt(block.type);
+                this.out.writeLong(block.offset);
+                this.out.writeInt(block.length);
+                this.out.writeInt(block.count);
+            }
+            this.out.writeLong(index);
+            this.out.writeInt(MAGIC);
+            this.out.flush();
+        }
+    }
+
+    private CacheSnapshot(final Path file, final FileChannel channel, final String fingerprint, final List<EntityMeta> types, final List<List<ColumnMeta>> columns, final List<Block> blocks) {
+        this.file = file;
+        this.channel = channel;
+        this.fingerprint = fingerprint;
+        this.types = types;
+        this.columns = columns;
+        this.blocks = blocks;
+    }
+
+    /**
+     * @return Returns a stable hash of the entity tables and columns, used to detect schema changes.
+     */
+    public static String fingerprint(final DatabaseMeta database) {
+        if (null == database) {
+            throw new IllegalArgumentException();
+        }
+        final List<EntityMeta> entities = new ArrayList<>(database.getEntities());
+        entities.sort(Comparator.comparing(EntityMeta::getName));
+        final StringBuilder text = new StringBuilder();
+        for (final EntityMeta meta : entities) {
+            text.append(meta.getName()).append('|').append(meta.getTable());
+            final SortedSet<String> types = new TreeSet<>();
+            for (final Class<?> clazz : meta.getTypes()) {
+                types.add(clazz.getName());
+            }
+            text.append('|').append(types).append('\n');
+            for (final ColumnMeta column : meta.getColumns()) {
+                text.append(' ').append(column.getClass().getSimpleName())
+                        .append('|').append(column.getName())
+                        .append('|').append(column.getType().getName())
+                        .append('|').append(column.isPrimaryKey())
+                        .append('|').append(column.isJson())
+                        .append('\n');
+            }
+        }
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to compute meta-data fingerprint.", e);
+        }
+    }
+
+    /**
+     * write the detached column data of a shared cache to a snapshot file
+     *
+     * @return Returns the number of entries written.
+     */
+    public static long write(final Path file, final DatabaseMeta database, final SharedDataCache cache) throws IOException {
+        if (null == file || null == database || null == cache) {
+            throw new IllegalArgumentException();
+        }
+        return write(file, database, (meta, writer) -> cache.forEach(meta, (key, data) -> {
+            try {
+                writer.add(key, data);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * write the loaded column values of all entities held by an entity cache to a snapshot file
+     * <p>
+     * Associations are written by key; inverse associations and unloaded lazy columns are not written.  The cache is read through
+     * {@link EntityCache#listByType(EntityMeta, Class)}, so it must not be modified while the snapshot is written.
+     *
+     * @return Returns the number of entries written.
+     */
+    public static long write(final Path file, final DatabaseMeta database, final EntityCache cache) throws IOException {
+        if (null == file || null == database || null == cache) {
+            throw new IllegalArgumentException();
+        }
+        return write(file, database, (meta, writer) -> {
+            for (final Object entity : cache.listByType(meta, Object.class)) {
+                if (null == entity) {
+                    continue;
+                }
+                try {
+                    writer.add(meta.getId().fromEntity(entity), SharedDataCache.capture(meta, entity, null));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (final Exception e) {
+                    logger.warn("Unable to capture entity of type [" + meta + "] for snapshot.", e);
+                }
+            }
+        });
+    }
+
+    private static long write(final Path file, final DatabaseMeta database, final BiConsumer<EntityMeta, Writer> source) throws IOException {
+        // write to a sibling file first, so a partial snapshot never replaces a good one
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            final Writer writer;
+            try (final OutputStream stream = Files.newOutputStream(temp)) {
+                writer = new Writer(stream, fingerprint(database));
+                for (final EntityMeta meta : database) {
+                    writer.begin(meta);
+                    source.accept(meta, writer);
+                }
+                writer.finish();
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            return writer.total;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * open a snapshot, reading only its header and block index
+     *
+     * @return Returns null if the snapshot was written against different meta-data.
+     */
+    public static CacheSnapshot open(final Path file, final DatabaseMeta database) throws IOException {
+        if (null == file || null == database) {
+            throw new IllegalArgumentException();
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long length = channel.size();
+            if (length < 24) {
+                throw new IOException("Snapshot [" + file + "] is truncated.");
+            }
+            final DataInputStream header = new DataInputStream(new BufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, 256))));
+            if (header.readInt() != MAGIC) {
+                throw new IOException("File [" + file + "] is not a cache snapshot.");
+            }
+            final int version = header.readInt();
+            final String fingerprint = header.readUTF();
+            final String expected = fingerprint(database);
+            if (version != VERSION || !expected.equals(fingerprint)) {
+                logger.warn("Ignoring cache snapshot [" + file + "] written for different meta-data.");
+                channel.close();
+                return null;
+            }
+
+            final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, length - 12, 12);
+            final long index = trailer.getLong();
+            if (trailer.getInt() != MAGIC || index <= 0 || index >= length - 12) {
+                throw new IOException("Snapshot [" + file + "] is incomplete.");
+            }
+            final DataInputStream in = new DataInputStream(new BufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, index, length - 12 - index)));
+            final int typeCount = in.readInt();
+            final List<EntityMeta> types = new ArrayList<>(typeCount);
+            final List<List<ColumnMeta>> columns = new ArrayList<>(typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                final EntityMeta meta = database.getEntity(in.readUTF());
+                final int columnCount = in.readInt();
+                final List<ColumnMeta> list = new ArrayList<>(columnCount);
+                for (int j = 0; j < columnCount; j++) {
+                    final String name = in.readUTF();
+                    list.add(null == meta ? null : meta.getColumns().stream().filter(c -> c.getName().equals(name)).findFirst().orElse(null));
+                }
+                types.add(meta);
+                columns.add(list);
+            }
+            final int blockCount = in.readInt();
+            final List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new Block(in.readInt(), in.readLong(), in.readInt(), in.readInt()));
+            }
+            return new CacheSnapshot(file, channel, fingerprint, types, columns, blocks);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return Returns the number of entries in this snapshot.
+     */
+    public long size() {
+        long size = 0;
+        for (final Block block : this.blocks) {
+            size += block.count;
+        }
+        return size;
+    }
+
+    /**
+     * register this snapshot as a source of a shared cache, decoding the blocks of each type on its first lookup
+     * <p>
+     * The snapshot must stay open while entries remain to be restored.
+     */
+    public void attach(final SharedDataCache cache, final int parallelism) {
+        if (null == cache || parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        cache.addSource((meta, target) -> {
+            final List<Block> list = new ArrayList<>();
+            for (final Block block : this.blocks) {
+                if (meta.equals(this.types.get(block.type))) {
+                    list.add(block);
+                }
+            }
+            final long loaded = this.load(list, target, parallelism);
+            logger.debug("Restored [" + loaded + "] cached entries of type [" + meta + "] from snapshot [" + this.file + "].");
+        });
+    }
+
+    /**
+     * decode all blocks into a shared cache, using up to the given number of threads
+     * <p>
+     * Keys already cached are kept, and decoding stops once the cache is full.
+     *
+     * @return Returns the number of entries loaded.
+     */
+    public long load(final SharedDataCache cache, final int parallelism) throws IOException {
+        if (null == cache || parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return this.load(this.blocks, cache, parallelism);
+    }
+
+    private long load(final List<Block> blocks, final SharedDataCache cache, final int parallelism) throws IOException {
+        final AtomicLong loaded = new AtomicLong();
+        if (parallelism == 1 || blocks.size() <= 1) {
+            for (final Block block : blocks) {
+                loaded.addAndGet(this.load(block, cache));
+            }
+            return loaded.get();
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, blocks.size()), runnable -> {
+            final Thread thread = new Thread(runnable, "normandra-cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(blocks.size());
+            for (final Block block : blocks) {
+                futures.add(executor.submit(() -> {
+                    loaded.addAndGet(this.load(block, cache));
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Snapshot load was interrupted.");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to load snapshot [" + this.file + "].", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return loaded.get();
+    }
+
+    private long load(final Block block, final SharedDataCache cache) throws IOException {
+        final EntityMeta meta = this.types.get(block.type);
+        if (null == meta || cache.isFull()) {
+            return 0;
+        }
+        final List<ColumnMeta> list = this.columns.get(block.type);
+        final MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.length);
+        final DataInputStream in = new DataInputStream(new BufferInputStream(buffer));
+        long loaded = 0;
+        for (int i = 0; i < block.count; i++) {
+            final Object key = ColumnCodec.read(in);
+            final int count = ColumnCodec.readSize(in);
+            final Map<ColumnMeta, Object> data = new LinkedHashMap<>(count * 2);
+            for (int j = 0; j < count; j++) {
+                final ColumnMeta column = list.get(ColumnCodec.readSize(in));
+                final Object value = ColumnCodec.read(in);
+                if (column != null) {
+                    data.put(column, value);
+                }
+            }
+            if (cache.restore(meta, key, data)) {
+                loaded++;
+            } else if (cache.isFull()) {
+                break;
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
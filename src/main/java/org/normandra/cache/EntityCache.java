@@ -195,8 +195,11 @@
 package org.normandra.cache;
 
 import org.normandra.meta.EntityMeta;
+import org.normandra.meta.IndexMeta;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -213,6 +216,69 @@ public interface EntityCache {
     boolean put(EntityMeta meta, Object key, Object entity);
     boolean remove(EntityMeta meta, Object key);
 
+    /**
+     * find a cached entity by the values of a unique index, in index column order
+     *
+     * @return Returns null if this cache does not index the entity.
+     */
+    default <T> T findByIndex(final EntityMeta meta, final IndexMeta index, final List<?> values, final Class<T> clazz) {
+        return null;
+    }
+
+    /**
+     * @return Returns true if the key is known to be absent from the store.
+     */
+    default boolean isAbsent(final EntityMeta meta, final Object key) {
+        return false;
+    }
+
+    /**
+     * remember that a lookup for this key found nothing
+     */
+    default void markAbsent(final EntityMeta meta, final Object key) {
+
+    }
+
+    /**
+     * forget any negative lookup for this key, called when the key is saved
+     */
+    default void clearAbsent(final EntityMeta meta, final Object key) {
+
+    }
+
+    /**
+     * apply an expiry policy to all entities of a type
+     *
+     * @return Returns false if this cache does not support expiry.
+     */
+    default boolean setExpiryPolicy(final EntityMeta meta, final ExpiryPolicy policy) {
+        return false;
+    }
+
+    default ExpiryPolicy getExpiryPolicy(final EntityMeta meta) {
+        return ExpiryPolicy.eternal();
+    }
+
+    /**
+     * @return Returns a snapshot of per-type statistics, empty if this cache does not keep any.
+     */
+    default Map<EntityMeta, CacheStats> getStats() {
+        return Collections.emptyMap();
+    }
+
+    default CacheStats getStats(final EntityMeta meta) {
+        return this.getStats().get(meta);
+    }
+
+    /**
+     * change the overall bound of this cache at runtime
+     *
+     * @return Returns false if this cache is not bounded.
+     */
+    default boolean resize(final long maximum) {
+        return false;
+    }
+
     default void clearTypes(final Iterable<EntityMeta> metas) {
         for (final EntityMeta meta : metas) {
             this.clearType(meta);
@@ -194,6 +194,8 @@
 
 package org.normandra.cache;
 
+import org.normandra.EntitySession;
+
 /**
  * a entity cache factory
  * <p>
@@ -203,4 +205,11 @@ package org.normandra.cache;
 public interface EntityCacheFactory
 {
     EntityCache create();
+
+    /**
+     * create a cache for the given session, used by caches which rehydrate or reload entities through it
+     */
+    default EntityCache create(final EntitySession session) {
+        return this.create();
+    }
 }
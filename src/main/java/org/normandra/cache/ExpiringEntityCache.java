@@ -0,0 +1,662 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.EntitySession;
+import org.normandra.NormandraException;
+import org.normandra.data.BasicDataHolder;
+import org.normandra.data.DataHolder;
+import org.normandra.data.DataHolderFactory;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.IndexMeta;
+import org.normandra.meta.MappedColumnMeta;
+import org.normandra.util.EntityBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * an entity cache decorator which applies per-type expiry and refresh-ahead policies
+ * <p>
+ * Expired entries are removed lazily as they are read, and write times are only tracked for types with a non-eternal
+ * policy.  Refresh-ahead is opt-in: when an {@link EntityReloader} is supplied, a read of an entry nearing expiry
+ * schedules a reload on the configured executor and keeps serving the current value until the reload completes.  The
+ * reloader never uses the owning session, and the delegate is only ever touched by the owning thread: reloaded column
+ * values are queued and applied in place to the cached instance on the next call made by the owner, and only if the
+ * entry was not written, removed, evicted or expired in the meantime.
+ */
+public class ExpiringEntityCache implements EntityCache {
+    private static final Logger logger = LoggerFactory.getLogger(ExpiringEntityCache.class);
+
+    private final EntityCache delegate;
+
+    private final EntityBuilder builder;
+
+    private final EntityReloader reloader;
+
+    private final Executor executor;
+
+    private final LongSupplier ticker;
+
+    private final ExpiryPolicy defaultPolicy;
+
+    private final Map<EntityMeta, ExpiryPolicy> policies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<EntityMeta, ConcurrentMap<Object, Timestamps>> timestamps = new ConcurrentHashMap<>();
+
+    private final Queue<Refreshed> refreshed = new ConcurrentLinkedQueue<>();
+
+    public static class Factory implements EntityCacheFactory {
+        private final EntityCacheFactory delegate;
+
+        private final Map<EntityMeta, ExpiryPolicy> policies = new HashMap<>();
+
+        private ExpiryPolicy defaultPolicy = ExpiryPolicy.eternal();
+
+        private EntityReloader reloader = null;
+
+        private Executor executor = null;
+
+        public Factory(final EntityCacheFactory delegate) {
+            if (null == delegate) {
+                throw new IllegalArgumentException();
+            }
+            this.delegate = delegate;
+        }
+
+        public Factory withDefaultPolicy(final ExpiryPolicy policy) {
+            if (null == policy) {
+                throw new IllegalArgumentException();
+            }
+            this.defaultPolicy = policy;
+            return this;
+        }
+
+        public Factory withPolicy(final EntityMeta meta, final ExpiryPolicy policy) {
+            if (null == meta || null == policy) {
+                throw new IllegalArgumentException();
+            }
+            this.policies.put(meta, policy);
+            return this;
+        }
+
+        /**
+         * enables refresh-ahead, reloading entries through the given reloader rather than the owning session
+         */
+        public Factory withRefreshAhead(final EntityReloader reloader) {
+            this.reloader = reloader;
+            return this;
+        }
+
+        public Factory withExecutor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        @Override
+        public EntityCache create() {
+            return this.create(null);
+        }
+
+        @Override
+        public EntityCache create(final EntitySession session) {
+            final Executor refresh = this.executor != null ? this.executor : RefreshExecutor.instance;
+            final ExpiringEntityCache cache = new ExpiringEntityCache(this.delegate.create(session), session, this.reloader, refresh, this.defaultPolicy, System::nanoTime);
+            this.policies.forEach(cache::setExpiryPolicy);
+            return cache;
+        }
+    }
+
+    private static class RefreshExecutor {
+        private static final Executor instance = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "normandra-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * wraps reloaded values, which are always concrete
+     */
+    private static class StaticHolders implements DataHolderFactory {
+        @Override
+        public DataHolder createStatic(final Object value) {
+            return new BasicDataHolder(value);
+        }
+
+        @Override
+        public DataHolder createLazy(final EntityMeta meta, final ColumnMeta column, final Object key) {
+            return null;
+        }
+
+        @Override
+        public DataHolder createMappedColumn(final EntityMeta meta, final MappedColumnMeta column, final Object key) {
+            return null;
+        }
+    }
+
+    private static class Timestamps {
+        private volatile long written;
+
+        private volatile long accessed;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private Timestamps(final long now) {
+            this.written = now;
+            this.accessed = now;
+        }
+    }
+
+    private static class Refreshed {
+        private final EntityMeta meta;
+
+        private final Object key;
+
+        private final Map<ColumnMeta, Object> data;
+
+        private final Timestamps time;
+
+        private final long written;
+
+        private Refreshed(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> data, final Timestamps time, final long written) {
+            this.meta = meta;
+            this.key = key;
+            this.data = data;
+            this.time = time;
+            this.written = written;
+        }
+    }
+
+    public ExpiringEntityCache(final EntityCache delegate, final ExpiryPolicy policy) {
+        this(delegate, null, null, RefreshExecutor.instance, policy, System::nanoTime);
+    }
+
+    public ExpiringEntityCache(final EntityCache delegate, final EntitySession session, final EntityReloader reloader, final Executor executor, final ExpiryPolicy policy, final LongSupplier ticker) {
+        if (null == delegate || null == executor || null == policy || null == ticker) {
+            throw new IllegalArgumentException();
+        }
+        this.delegate = delegate;
+        this.builder = new EntityBuilder(session, new StaticHolders());
+        this.reloader = reloader;
+        this.executor = executor;
+        this.defaultPolicy = policy;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public boolean setExpiryPolicy(final EntityMeta meta, final ExpiryPolicy policy) {
+        if (null == meta) {
+            return false;
+        }
+        if (null == policy) {
+            this.policies.remove(meta);
+        } else {
+            this.policies.put(meta, policy);
+        }
+        if (this.getExpiryPolicy(meta).isEternal()) {
+            this.timestamps.remove(meta);
+        }
+        return true;
+    }
+
+    @Override
+    public ExpiryPolicy getExpiryPolicy(final EntityMeta meta) {
+        if (null == meta) {
+            return this.defaultPolicy;
+        }
+        return this.policies.getOrDefault(meta, this.defaultPolicy);
+    }
+
+    @Override
+    public Map<EntityMeta, CacheStats> getStats() {
+        this.applyRefreshed();
+        return this.delegate.getStats();
+    }
+
+    @Override
+    public boolean resize(final long maximum) {
+        return this.delegate.resize(maximum);
+    }
+
+    @Override
+    public void clear() {
+        this.applyRefreshed();
+        this.timestamps.clear();
+        this.delegate.clear();
+    }
+
+    @Override
+    public void clearType(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        this.applyRefreshed();
+        this.timestamps.remove(meta);
+        this.delegate.clearType(meta);
+    }
+
+    @Override
+    public <T> T get(final EntityMeta meta, final Object key, final Class<T> clazz) {
+        if (null == meta || null == key) {
+            return null;
+        }
+        this.applyRefreshed();
+        if (!this.checkEntry(meta, key)) {
+            return null;
+        }
+        final T entity = this.delegate.get(meta, key, clazz);
+        if (null == entity) {
+            // evicted by the delegate
+            this.forget(meta, key);
+        }
+        return entity;
+    }
+
+    @Override
+    public <T> Map<Object, T> find(final EntityMeta meta, final Collection<?> keys, final Class<T> clazz) {
+        if (null == meta || null == keys || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        this.applyRefreshed();
+        final List<Object> live = new ArrayList<>(keys.size());
+        for (final Object key : keys) {
+            if (key != null && this.checkEntry(meta, key)) {
+                live.add(key);
+            }
+        }
+        if (live.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<Object, T> found = this.delegate.find(meta, live, clazz);
+        if (found.size() < live.size()) {
+            for (final Object key : live) {
+                if (!found.containsKey(key)) {
+                    this.forget(meta, key);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <T> T findByIndex(final EntityMeta meta, final IndexMeta index, final List<?> values, final Class<T> clazz) {
+        this.applyRefreshed();
+        final T entity = this.delegate.findByIndex(meta, index, values, clazz);
+        if (null == entity) {
+            return null;
+        }
+        // resolve through the primary key so expiry applies
+        return this.get(meta, meta.getId().fromEntity(entity), clazz);
+    }
+
+    @Override
+    public <T> Iterable<T> listByType(final EntityMeta meta, final Class<T> clazz) {
+        if (null == meta) {
+            return Collections.emptyList();
+        }
+        this.applyRefreshed();
+        final ExpiryPolicy policy = this.getExpiryPolicy(meta);
+        final Map<Object, Timestamps> entries = this.timestamps.get(meta);
+        if (!policy.isEternal() && entries != null) {
+            final long now = this.ticker.getAsLong();
+            for (final Map.Entry<Object, Timestamps> entry : new ArrayList<>(entries.entrySet())) {
+                final Timestamps time = entry.getValue();
+                if (policy.isExpired(now, time.written, time.accessed)) {
+                    this.expire(meta, entry.getKey(), time);
+                }
+            }
+        }
+        return this.delegate.listByType(meta, clazz);
+    }
+
+    @Override
+    public boolean put(final EntityMeta meta, final Object key, final Object entity) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        if (null == entity) {
+            return this.remove(meta, key);
+        }
+        this.applyRefreshed();
+        final boolean updated = this.delegate.put(meta, key, entity);
+        if (updated) {
+            if (this.getExpiryPolicy(meta).isEternal()) {
+                this.forget(meta, key);
+            } else {
+                final long now = this.ticker.getAsLong();
+                final Timestamps existing = this.timestamps.computeIfAbsent(meta, m -> new ConcurrentHashMap<>()).putIfAbsent(key, new Timestamps(now));
+                if (existing != null) {
+                    existing.written = now;
+                    existing.accessed = now;
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean remove(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        this.applyRefreshed();
+        this.forget(meta, key);
+        return this.delegate.remove(meta, key);
+    }
+
+    @Override
+    public boolean isAbsent(final EntityMeta meta, final Object key) {
+        return this.delegate.isAbsent(meta, key);
+    }
+
+    @Override
+    public void markAbsent(final EntityMeta meta, final Object key) {
+        this.delegate.markAbsent(meta, key);
+    }
+
+    @Override
+    public void clearAbsent(final EntityMeta meta, final Object key) {
+        this.delegate.clearAbsent(meta, key);
+    }
+
+    /**
+     * @return Returns the number of entries whose write and access times are tracked.
+     */
+    public int getTrackedCount() {
+        int count = 0;
+        for (final Map<Object, Timestamps> entries : this.timestamps.values()) {
+            count += entries.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return Returns false if the entry has expired (and was removed), else records the access.
+     */
+    private boolean checkEntry(final EntityMeta meta, final Object key) {
+        final ExpiryPolicy policy = this.getExpiryPolicy(meta);
+        if (policy.isEternal()) {
+            return true;
+        }
+        final Map<Object, Timestamps> entries = this.timestamps.get(meta);
+        final Timestamps time = null == entries ? null : entries.get(key);
+        if (null == time) {
+            // written before a policy was applied, treat as fresh from now on
+            return this.delegate.get(meta, key, Object.class) != null && this.touch(meta, key);
+        }
+        final long now = this.ticker.getAsLong();
+        if (policy.isExpired(now, time.written, time.accessed)) {
+            this.expire(meta, key, time);
+            return false;
+        }
+        time.accessed = now;
+        if (this.reloader != null && policy.needsRefresh(now, time.written) && time.refreshing.compareAndSet(false, true)) {
+            this.refresh(meta, key, time);
+        }
+        return true;
+    }
+
+    private boolean touch(final EntityMeta meta, final Object key) {
+        this.timestamps.computeIfAbsent(meta, m -> new ConcurrentHashMap<>()).putIfAbsent(key, new Timestamps(this.ticker.getAsLong()));
+        return true;
+    }
+
+    private void forget(final EntityMeta meta, final Object key) {
+        final Map<Object, Timestamps> entries = this.timestamps.get(meta);
+        if (entries != null) {
+            entries.remove(key);
+        }
+    }
+
+    private void expire(final EntityMeta meta, final Object key, final Timestamps time) {
+        final Map<Object, Timestamps> entries = this.timestamps.get(meta);
+        if (entries != null && entries.remove(key, time)) {
+            this.delegate.remove(meta, key);
+        }
+    }
+
+    /**
+     * applies reloaded values in place on the owning thread, skipping entries that changed since their reload was scheduled
+     */
+    private void applyRefreshed() {
+        Refreshed item;
+        while ((item = this.refreshed.poll()) != null) {
+            final Map<Object, Timestamps> entries = this.timestamps.get(item.meta);
+            final Timestamps current = null == entries ? null : entries.get(item.key);
+            if (current == item.time && current.written == item.written) {
+                final Object instance = this.delegate.get(item.meta, item.key, Object.class);
+                if (null == instance) {
+                    // evicted while reloading
+                    entries.remove(item.key, current);
+                } else if (null == item.data) {
+                    entries.remove(item.key, current);
+                    this.delegate.remove(item.meta, item.key);
+                } else {
+                    try {
+                        this.builder.update(item.meta, instance, item.data);
+                        current.written = this.ticker.getAsLong();
+                    } catch (final NormandraException e) {
+                        logger.warn("Unable to apply refreshed entity [" + item.key + "] of type [" + item.meta + "].", e);
+                    }
+                }
+            }
+            item.time.refreshing.set(false);
+        }
+    }
+
+    private void refresh(final EntityMeta meta, final Object key, final Timestamps time) {
+        final long written = time.written;
+        try {
+            this.executor.execute(() -> {
+                try {
+                    final Map<ColumnMeta, Object> data = this.reloader.reload(meta, key);
+                    this.refreshed.add(new Refreshed(meta, key, data, time, written));
+                } catch (final Exception e) {
+                    logger.warn("Unable to refresh cached entity [" + key + "] of type [" + meta + "].", e);
+                    time.refreshing.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            logger.debug("Unable to schedule refresh of entity [" + key + "] of type [" + meta + "].", e);
+            time.refreshing.set(false);
+        }
+    }
+}
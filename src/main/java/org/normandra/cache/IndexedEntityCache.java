@@ -0,0 +1,530 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.EntitySession;
+import org.normandra.data.ColumnAccessor;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.IndexMeta;
+import org.normandra.util.DataUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * an entity cache decorator which keeps in-memory secondary lookups for unique indices opted in with {@link CachedIndex}
+ * <p>
+ * Index values are captured from each entity on {@link #put(EntityMeta, Object, Object)} and dropped on
+ * {@link #remove(EntityMeta, Object)}.  A lookup resolves the primary key through the index and then reads the entity
+ * from the delegate cache, so entries evicted by the delegate are never returned.  Entities whose index values changed
+ * in memory since they were cached are re-indexed and reported as a miss.  Keys the delegate has evicted are pruned
+ * whenever the index of a type doubles in size since its last sweep, so the index stays bounded by the delegate.
+ */
+public class IndexedEntityCache implements EntityCache {
+    private static final Logger logger = LoggerFactory.getLogger(IndexedEntityCache.class);
+
+    private static final int MINIMUM_SWEEP = 64;
+
+    private final EntityCache delegate;
+
+    private final EntitySession session;
+
+    private final ConcurrentMap<EntityMeta, TypeIndex> types = new ConcurrentHashMap<>();
+
+    public static class Factory implements EntityCacheFactory {
+        private final EntityCacheFactory delegate;
+
+        public Factory(final EntityCacheFactory delegate) {
+            if (null == delegate) {
+                throw new IllegalArgumentException();
+            }
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EntityCache create() {
+            return new IndexedEntityCache(this.delegate.create(), null);
+        }
+
+        @Override
+        public EntityCache create(final EntitySession session) {
+            return new IndexedEntityCache(this.delegate.create(session), session);
+        }
+    }
+
+    /**
+     * lookups for all indexed entities of a single type
+     */
+    private static final class TypeIndex {
+        private final List<IndexMeta> indices;
+
+        private final List<Map<List<Object>, Object>> lookups;
+
+        private final Map<Object, List<List<Object>>> values = new HashMap<>();
+
+        private int sweepAt = MINIMUM_SWEEP;
+
+        private TypeIndex(final List<IndexMeta> indices) {
+            this.indices = indices;
+            this.lookups = new ArrayList<>(indices.size());
+            for (int i = 0; i < indices.size(); i++) {
+                this.lookups.add(new HashMap<>());
+            }
+        }
+
+        private synchronized Object lookup(final IndexMeta index, final List<?> key) {
+            final int position = this.indices.indexOf(index);
+            if (position < 0) {
+                return null;
+            }
+            return this.lookups.get(position).get(key);
+        }
+
+        private synchronized void add(final Object key, final List<List<Object>> entry) {
+            this.remove(key);
+            for (int i = 0; i < this.indices.size(); i++) {
+                final List<Object> value = entry.get(i);
+                if (value != null) {
+                    this.lookups.get(i).put(value, key);
+                }
+            }
+            this.values.put(key, entry);
+        }
+
+        private synchronized void remove(final Object key) {
+            final List<List<Object>> existing = this.values.remove(key);
+            if (null == existing) {
+                return;
+            }
+            for (int i = 0; i < this.indices.size(); i++) {
+                final List<Object> value = existing.get(i);
+                if (value != null) {
+                    this.lookups.get(i).remove(value, key);
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return this.values.size();
+        }
+
+        private synchronized boolean needsSweep() {
+            return this.values.size() > this.sweepAt;
+        }
+
+        /**
+         * drop every key whose normalized form is not in the given live set
+         */
+        private synchronized void retain(final Set<Object> live) {
+            for (final Object key : new ArrayList<>(this.values.keySet())) {
+                if (!live.contains(DataUtils.normalizeKey(key))) {
+                    this.remove(key);
+                }
+            }
+            this.sweepAt = Math.max(MINIMUM_SWEEP, this.values.size() * 2);
+        }
+    }
+
+    public IndexedEntityCache(final EntityCache delegate) {
+        this(delegate, null);
+    }
+
+    public IndexedEntityCache(final EntityCache delegate, final EntitySession session) {
+        if (null == delegate) {
+            throw new IllegalArgumentException();
+        }
+        this.delegate = delegate;
+        this.session = session;
+    }
+
+    /**
+     * @return Returns the number of entities indexed for a type.
+     */
+    public int getIndexedCount(final EntityMeta meta) {
+        if (null == meta) {
+            return 0;
+        }
+        final TypeIndex index = this.types.get(meta);
+        if (null == index) {
+            return 0;
+        }
+        this.sweep(meta, index);
+        return index.size();
+    }
+
+    @Override
+    public <T> T findByIndex(final EntityMeta meta, final IndexMeta index, final List<?> values, final Class<T> clazz) {
+        if (null == meta || null == index || null == values) {
+            return null;
+        }
+        final TypeIndex lookups = this.typeIndex(meta);
+        if (null == lookups || !lookups.indices.contains(index)) {
+            return this.delegate.findByIndex(meta, index, values, clazz);
+        }
+        final Object key = lookups.lookup(index, values);
+        if (null == key) {
+            return null;
+        }
+        final T entity = this.delegate.get(meta, key, clazz);
+        if (null == entity) {
+            // evicted or removed underneath us
+            lookups.remove(key);
+            return null;
+        }
+        final List<List<Object>> current = this.capture(meta, lookups, entity);
+        if (!values.equals(current.get(lookups.indices.indexOf(index)))) {
+            // modified in memory since it was cached
+            lookups.add(key, current);
+            return null;
+        }
+        return entity;
+    }
+
+    @Override
+    public boolean put(final EntityMeta meta, final Object key, final Object entity) {
+        final boolean updated = this.delegate.put(meta, key, entity);
+        if (null == meta || null == key) {
+            return updated;
+        }
+        final TypeIndex lookups = this.typeIndex(meta);
+        if (null == lookups) {
+            return updated;
+        }
+        if (updated && entity != null) {
+            lookups.add(key, this.capture(meta, lookups, entity));
+            if (lookups.needsSweep()) {
+                this.sweep(meta, lookups);
+            }
+        } else {
+            lookups.remove(key);
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean remove(final EntityMeta meta, final Object key) {
+        if (meta != null && key != null) {
+            final TypeIndex lookups = this.types.get(meta);
+            if (lookups != null) {
+                lookups.remove(key);
+            }
+        }
+        return this.delegate.remove(meta, key);
+    }
+
+    @Override
+    public void clear() {
+        this.types.clear();
+        this.delegate.clear();
+    }
+
+    @Override
+    public void clearType(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        this.types.remove(meta);
+        this.delegate.clearType(meta);
+    }
+
+    @Override
+    public <T> T get(final EntityMeta meta, final Object key, final Class<T> clazz) {
+        return this.delegate.get(meta, key, clazz);
+    }
+
+    @Override
+    public <T> Map<Object, T> find(final EntityMeta meta, final Collection<?> keys, final Class<T> clazz) {
+        return this.delegate.find(meta, keys, clazz);
+    }
+
+    @Override
+    public <T> Iterable<T> listByType(final EntityMeta meta, final Class<T> clazz) {
+        return this.delegate.listByType(meta, clazz);
+    }
+
+    @Override
+    public boolean isAbsent(final EntityMeta meta, final Object key) {
+        return this.delegate.isAbsent(meta, key);
+    }
+
+    @Override
+    public void markAbsent(final EntityMeta meta, final Object key) {
+        this.delegate.markAbsent(meta, key);
+    }
+
+    @Override
+    public void clearAbsent(final EntityMeta meta, final Object key) {
+        this.delegate.clearAbsent(meta, key);
+    }
+
+    @Override
+    public boolean setExpiryPolicy(final EntityMeta meta, final ExpiryPolicy policy) {
+        return this.delegate.setExpiryPolicy(meta, policy);
+    }
+
+    @Override
+    public ExpiryPolicy getExpiryPolicy(final EntityMeta meta) {
+        return this.delegate.getExpiryPolicy(meta);
+    }
+
+    @Override
+    public Map<EntityMeta, CacheStats> getStats() {
+        return this.delegate.getStats();
+    }
+
+    @Override
+    public boolean resize(final long maximum) {
+        return this.delegate.resize(maximum);
+    }
+
+    private TypeIndex typeIndex(final EntityMeta meta) {
+        final TypeIndex existing = this.types.get(meta);
+        if (existing != null) {
+            return existing.indices.isEmpty() ? null : existing;
+        }
+        final List<IndexMeta> indices = new ArrayList<>();
+        for (final IndexMeta index : meta.getIndexed()) {
+            // only unique indices identify a single entity, so only they can be answered from memory
+            if (index.isUnique() && index.isCacheable() && !index.getColumns().isEmpty()) {
+                indices.add(index);
+            }
+        }
+        final TypeIndex created = this.types.computeIfAbsent(meta, m -> new TypeIndex(indices));
+        return created.indices.isEmpty() ? null : created;
+    }
+
+    /**
+     * prune keys the delegate no longer holds, listing its entries so that recency is left untouched
+     */
+    private void sweep(final EntityMeta meta, final TypeIndex lookups) {
+        final Set<Object> live = new HashSet<>();
+        for (final Object entity : this.delegate.listByType(meta, Object.class)) {
+            final Object key = meta.getId().fromEntity(entity);
+            if (key != null) {
+                live.add(DataUtils.normalizeKey(key));
+            }
+        }
+        lookups.retain(live);
+    }
+
+    private List<List<Object>> capture(final EntityMeta meta, final TypeIndex lookups, final Object entity) {
+        final List<List<Object>> values = new ArrayList<>(lookups.indices.size());
+        for (final IndexMeta index : lookups.indices) {
+            values.add(this.capture(meta, index, entity));
+        }
+        return values;
+    }
+
+    private List<Object> capture(final EntityMeta meta, final IndexMeta index, final Object entity) {
+        final List<Object> values = new ArrayList<>(index.getColumns().size());
+        try {
+            for (final ColumnMeta column : index.getColumns()) {
+                final ColumnAccessor accessor = meta.getAccessor(column);
+                if (null == accessor || !accessor.isLoaded(entity)) {
+                    return null;
+                }
+                values.add(accessor.getValue(entity, this.session));
+            }
+        } catch (final Exception e) {
+            logger.warn("Unable to capture index [" + index.getName() + "] values for entity [" + meta + "].", e);
+            return null;
+        }
+        return Collections.unmodifiableList(values);
+    }
+}
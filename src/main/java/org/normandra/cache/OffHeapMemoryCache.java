@@ -0,0 +1,793 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.EntitySession;
+import org.normandra.NormandraException;
+import org.normandra.data.ColumnAccessor;
+import org.normandra.data.DataHolderFactory;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.MappedColumnMeta;
+import org.normandra.util.DataUtils;
+import org.normandra.util.EntityBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * an entity cache which keeps serialized column data outside of the java heap
+ * <p>
+ * The primary key and loaded column values of each entity are encoded into a compact binary form and appended to
+ * fixed-size slabs of direct memory.  Keys are found through a per-type open-addressing table of key hashes and slab
+ * locations held in primitive arrays, so the heap cost of an entry is a few bytes regardless of its key type.  Keys are
+ * normalized and compared in their encoded form.  Once the memory budget is reached, the oldest slab is recycled and
+ * every entry still pointing into it is evicted.  Entities are rehydrated through an {@link EntityBuilder} on every
+ * read, so callers always receive a new instance - pair with a session-level identity map where instance identity
+ * matters.
+ */
+public class OffHeapMemoryCache implements EntityCache {
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapMemoryCache.class);
+
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * bytes before the key of each record: key length and data length
+     */
+    private static final int HEADER = 8;
+
+    private final EntityBuilder builder;
+
+    private final int slabSize;
+
+    private final int maximumSlabs;
+
+    private final Map<EntityMeta, KeyTable> index = new TreeMap<>();
+
+    private final Map<EntityMeta, List<ColumnMeta>> columns = new HashMap<>();
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    private int current = -1;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    private final CacheCounters counters = new CacheCounters();
+
+    private long size = 0;
+
+    public static class Factory implements EntityCacheFactory {
+        private final DataHolderFactory holders;
+
+        private long memoryBudget = 64L * DEFAULT_SLAB_SIZE;
+
+        private int slabSize = DEFAULT_SLAB_SIZE;
+
+        public Factory(final DataHolderFactory holders) {
+            if (null == holders) {
+                throw new IllegalArgumentException();
+            }
+            this.holders = holders;
+        }
+
+        public Factory withMemoryBudget(final long bytes) {
+            this.memoryBudget = bytes;
+            return this;
+        }
+
+        public Factory withSlabSize(final int bytes) {
+            this.slabSize = bytes;
+            return this;
+        }
+
+        @Override
+        public EntityCache create() {
+            throw new IllegalStateException("Off-heap cache rehydrates entities through a session, use create(session).");
+        }
+
+        @Override
+        public EntityCache create(final EntitySession session) {
+            return new OffHeapMemoryCache(session, this.holders, this.memoryBudget, this.slabSize);
+        }
+    }
+
+    /**
+     * an open-addressing table of key hashes and record locations, with linear probing and backward-shift deletion
+     * <p>
+     * A location packs the slab index plus one in its upper half and the record offset in its lower half, so zero
+     * marks an empty slot.
+     */
+    private static final class KeyTable {
+        private int[] hashes = new int[16];
+
+        private long[] locations = new long[16];
+
+        private int size = 0;
+
+        private int slot(final int hash) {
+            return (hash ^ (hash >>> 16)) & (this.hashes.length - 1);
+        }
+
+        private int next(final int slot) {
+            return (slot + 1) & (this.hashes.length - 1);
+        }
+
+        private void insert(final int hash, final long location) {
+            if ((this.size + 1) * 4 > this.hashes.length * 3) {
+                this.rehash(this.hashes.length * 2, -1);
+            }
+            int i = this.slot(hash);
+            while (this.locations[i] != 0) {
+                i = this.next(i);
+            }
+            this.hashes[i] = hash;
+            this.locations[i] = location;
+            this.size++;
+        }
+
+        private void delete(final int slot) {
+            int empty = slot;
+            this.locations[empty] = 0;
+            this.size--;
+            for (int i = this.next(empty); this.locations[i] != 0; i = this.next(i)) {
+                // move back any entry whose home slot does not lie cyclically within (empty, i]
+                final int home = this.slot(this.hashes[i]);
+                final boolean between = empty <= i ? empty < home && home <= i : empty < home || home <= i;
+                if (!between) {
+                    this.hashes[empty] = this.hashes[i];
+                    this.locations[empty] = this.locations[i];
+                    this.locations[i] = 0;
+                    empty = i;
+                }
+            }
+        }
+
+        /**
+         * @return Returns the number of entries dropped because they point into the given slab.
+         */
+        private int rehash(final int capacity, final int slab) {
+            final int[] oldHashes = this.hashes;
+            final long[] oldLocations = this.locations;
+            this.hashes = new int[capacity];
+            this.locations = new long[capacity];
+            this.size = 0;
+            int dropped = 0;
+            for (int i = 0; i < oldLocations.length; i++) {
+                if (oldLocations[i] != 0) {
+                    if (slabOf(oldLocations[i]) == slab) {
+                        dropped++;
+                    } else {
+                        this.insert(oldHashes[i], oldLocations[i]);
+                    }
+                }
+            }
+            return dropped;
+        }
+    }
+
+    private static final class SlabInputStream extends InputStream {
+        private final ByteBuffer memory;
+
+        private SlabInputStream(final ByteBuffer slab, final int offset, final int length) {
+            this.memory = slab.duplicate();
+            this.memory.limit(offset + length);
+            this.memory.position(offset);
+        }
+
+        @Override
+        public int read() {
+            return this.memory.hasRemaining() ? this.memory.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!this.memory.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, this.memory.remaining());
+            this.memory.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    public OffHeapMemoryCache(final EntitySession session, final DataHolderFactory holders, final long memoryBudget) {
+        this(session, holders, memoryBudget, DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapMemoryCache(final EntitySession session, final DataHolderFactory holders, final long memoryBudget, final int slabSize) {
+        if (null == holders) {
+            throw new IllegalArgumentException();
+        }
+        if (slabSize <= 0 || memoryBudget < slabSize) {
+            throw new IllegalArgumentException("Memory budget must hold at least one slab of [" + slabSize + "] bytes.");
+        }
+        this.builder = new EntityBuilder(session, holders);
+        this.slabSize = slabSize;
+        this.maximumSlabs = (int) Math.min(Integer.MAX_VALUE - 1, memoryBudget / slabSize);
+    }
+
+    public long getMemoryBudget() {
+        return (long) this.maximumSlabs * this.slabSize;
+    }
+
+    synchronized public long getMemoryAllocated() {
+        return (long) this.slabs.size() * this.slabSize;
+    }
+
+    public long getHitCount() {
+        return this.getStats().values().stream().mapToLong(CacheStats::getHitCount).sum();
+    }
+
+    public long getMissCount() {
+        return this.getStats().values().stream().mapToLong(CacheStats::getMissCount).sum();
+    }
+
+    public long getEvictionCount() {
+        return this.getStats().values().stream().mapToLong(CacheStats::getEvictionCount).sum();
+    }
+
+    synchronized public long size() {
+        return this.size;
+    }
+
+    @Override
+    synchronized public Map<EntityMeta, CacheStats> getStats() {
+        return this.counters.snapshot(meta -> {
+            final KeyTable entries = this.index.get(meta);
+            return null == entries ? 0 : entries.size;
+        });
+    }
+
+    @Override
+    synchronized public void clear() {
+        this.index.clear();
+        this.slabs.clear();
+        this.current = -1;
+        this.size = 0;
+    }
+
+    @Override
+    synchronized public void clearType(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        final KeyTable entries = this.index.remove(meta);
+        if (entries != null) {
+            this.size -= entries.size;
+        }
+    }
+
+    @Override
+    public <T> T get(final EntityMeta meta, final Object key, final Class<T> clazz) {
+        if (null == meta || null == key) {
+            return null;
+        }
+        final Map<ColumnMeta, Object> data;
+        synchronized (this) {
+            data = this.read(meta, key);
+            if (null == data) {
+                this.counters.of(meta).miss();
+                return null;
+            }
+            this.counters.of(meta).hit();
+        }
+        return cast(this.build(meta, key, data), clazz);
+    }
+
+    @Override
+    public <T> Map<Object, T> find(final EntityMeta meta, final Collection<?> keys, final Class<T> clazz) {
+        if (null == meta || null == keys || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<Object, Map<ColumnMeta, Object>> found = new LinkedHashMap<>();
+        synchronized (this) {
+            for (final Object key : keys) {
+                final Map<ColumnMeta, Object> data = null == key ? null : this.read(meta, key);
+                if (data != null) {
+                    found.put(key, data);
+                }
+            }
+            this.counters.of(meta).findAndLookup(keys.size(), found.size());
+        }
+        final Map<Object, T> map = new HashMap<>(found.size());
+        for (final Map.Entry<Object, Map<ColumnMeta, Object>> entry : found.entrySet()) {
+            final T item = cast(this.build(meta, entry.getKey(), entry.getValue()), clazz);
+            if (item != null) {
+                map.put(entry.getKey(), item);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public <T> Iterable<T> listByType(final EntityMeta meta, final Class<T> clazz) {
+        if (null == meta) {
+            return Collections.emptyList();
+        }
+        final List<Map<ColumnMeta, Object>> found = new ArrayList<>();
+        synchronized (this) {
+            final KeyTable entries = this.index.get(meta);
+            if (null == entries || 0 == entries.size) {
+                return Collections.emptyList();
+            }
+            final long[] locations = entries.locations.clone();
+            for (final long location : locations) {
+                if (location != 0) {
+                    final Map<ColumnMeta, Object> data = this.decode(meta, location);
+                    if (data != null) {
+                        found.add(data);
+                    }
+                }
+            }
+        }
+        final List<T> items = new ArrayList<>(found.size());
+        for (final Map<ColumnMeta, Object> data : found) {
+            final T item = cast(this.build(meta, null, data), clazz);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    @Override
+    synchronized public boolean remove(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        final KeyTable entries = this.index.get(meta);
+        if (null == entries) {
+            return false;
+        }
+        final byte[] encoded = this.encodeKey(key);
+        if (null == encoded) {
+            return false;
+        }
+        final int slot = this.find(entries, encoded);
+        if (slot < 0) {
+            return false;
+        }
+        entries.delete(slot);
+        this.size--;
+        return true;
+    }
+
+    @Override
+    public boolean put(final EntityMeta meta, final Object key, final Object entity) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        if (null == entity) {
+            return this.remove(meta, key);
+        }
+
+        final Map<ColumnMeta, Object> data;
+        try {
+            data = this.capture(meta, entity);
+        } catch (final NormandraException e) {
+            logger.warn("Unable to read column values of entity [" + entity + "] of type [" + meta + "].", e);
+            this.remove(meta, key);
+            return false;
+        }
+        if (null == data || !ColumnCodec.isSupported(DataUtils.normalizeKey(key))) {
+            // entity holds values we cannot encode, never cache a partial copy
+            this.remove(meta, key);
+            return false;
+        }
+
+        synchronized (this) {
+            final byte[] encodedKey = this.encodeKey(key);
+            final byte[] bytes;
+            try {
+                bytes = this.encode(meta, data);
+            } catch (final IOException e) {
+                logger.warn("Unable to encode entity [" + entity + "] of type [" + meta + "].", e);
+                this.remove(meta, key);
+                return false;
+            }
+            if (null == encodedKey || HEADER + encodedKey.length + bytes.length > this.slabSize) {
+                logger.debug("Entity [" + key + "] of type [" + meta + "] is larger than a single slab.");
+                this.remove(meta, key);
+                return false;
+            }
+            final long location = this.write(encodedKey, bytes);
+            final KeyTable entries = this.index.computeIfAbsent(meta, m -> new KeyTable());
+            final int slot = this.find(entries, encodedKey);
+            if (slot >= 0) {
+                entries.locations[slot] = location;
+            } else {
+                entries.insert(hash(encodedKey), location);
+                this.size++;
+            }
+            this.counters.of(meta).put();
+            return true;
+        }
+    }
+
+    private Map<ColumnMeta, Object> capture(final EntityMeta meta, final Object entity) throws NormandraException {
+        final Map<ColumnMeta, Object> data = new LinkedHashMap<>();
+        for (final ColumnMeta column : meta) {
+            if (column instanceof MappedColumnMeta) {
+                continue;
+            }
+            final ColumnAccessor accessor = meta.getAccessor(column);
+            if (accessor != null && accessor.isLoaded(entity)) {
+                final Object value = accessor.getValue(entity, null);
+                if (value != null) {
+                    if (!ColumnCodec.isSupported(value)) {
+                        return null;
+                    }
+                    data.put(column, value);
+                }
+            }
+        }
+        return data;
+    }
+
+    private List<ColumnMeta> columns(final EntityMeta meta) {
+        return this.columns.computeIfAbsent(meta, m -> new ArrayList<>(m.getColumns()));
+    }
+
+    private byte[] encodeKey(final Object key) {
+        try {
+            this.buffer.reset();
+            final DataOutputStream out = new DataOutputStream(this.buffer);
+            ColumnCodec.write(out, DataUtils.normalizeKey(key));
+            out.flush();
+            return this.buffer.toByteArray();
+        } catch (final IOException e) {
+            logger.warn("Unable to encode key [" + key + "].", e);
+            return null;
+        }
+    }
+
+    private byte[] encode(final EntityMeta meta, final Map<ColumnMeta, Object> data) throws IOException {
+        final List<ColumnMeta> list = this.columns(meta);
+        this.buffer.reset();
+        final DataOutputStream out = new DataOutputStream(this.buffer);
+        ColumnCodec.writeSize(out, data.size());
+        for (final Map.Entry<ColumnMeta, Object> entry : data.entrySet()) {
+            ColumnCodec.writeSize(out, list.indexOf(entry.getKey()));
+            ColumnCodec.write(out, entry.getValue());
+        }
+        out.flush();
+        return this.buffer.toByteArray();
+    }
+
+    private static int hash(final byte[] key) {
+        return Arrays.hashCode(key);
+    }
+
+    private static int slabOf(final long location) {
+        return (int) (location >>> 32) - 1;
+    }
+
+    private static int offsetOf(final long location) {
+        return (int) location;
+    }
+
+    /**
+     * @return Returns the table slot holding the encoded key, or -1 if not found.
+     */
+    private int find(final KeyTable entries, final byte[] key) {
+        final int hash = hash(key);
+        for (int i = entries.slot(hash); entries.locations[i] != 0; i = entries.next(i)) {
+            if (entries.hashes[i] == hash && this.matches(entries.locations[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(final long location, final byte[] key) {
+        final ByteBuffer slab = this.slabs.get(slabOf(location));
+        final int offset = offsetOf(location);
+        if (slab.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(offset + HEADER + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<ColumnMeta, Object> read(final EntityMeta meta, final Object key) {
+        final KeyTable entries = this.index.get(meta);
+        if (null == entries) {
+            return null;
+        }
+        final byte[] encoded = this.encodeKey(key);
+        final int slot = null == encoded ? -1 : this.find(entries, encoded);
+        if (slot < 0) {
+            return null;
+        }
+        final Map<ColumnMeta, Object> data = this.decode(meta, entries.locations[slot]);
+        if (null == data) {
+            entries.delete(slot);
+            this.size--;
+        }
+        return data;
+    }
+
+    private Map<ColumnMeta, Object> decode(final EntityMeta meta, final long location) {
+        final ByteBuffer slab = this.slabs.get(slabOf(location));
+        final int offset = offsetOf(location);
+        final int keyLength = slab.getInt(offset);
+        final int length = slab.getInt(offset + 4);
+        final List<ColumnMeta> list = this.columns(meta);
+        try (final DataInputStream in = new DataInputStream(new SlabInputStream(slab, offset + HEADER + keyLength, length))) {
+            final int count = ColumnCodec.readSize(in);
+            final Map<ColumnMeta, Object> data = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final ColumnMeta column = list.get(ColumnCodec.readSize(in));
+                data.put(column, ColumnCodec.read(in));
+            }
+            return data;
+        } catch (final Exception e) {
+            logger.warn("Unable to decode cached entity of type [" + meta + "].", e);
+            return null;
+        }
+    }
+
+    private Object build(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> data) {
+        try {
+            return this.builder.build(meta, data);
+        } catch (final Exception e) {
+            logger.warn("Unable to rehydrate cached entity [" + key + "] of type [" + meta + "].", e);
+            return null;
+        }
+    }
+
+    private long write(final byte[] key, final byte[] bytes) {
+        final int length = HEADER + key.length + bytes.length;
+        ByteBuffer slab = this.current < 0 ? null : this.slabs.get(this.current);
+        if (null == slab || slab.remaining() < length) {
+            slab = this.nextSlab();
+        }
+        final int offset = slab.position();
+        slab.putInt(key.length);
+        slab.putInt(bytes.length);
+        slab.put(key);
+        slab.put(bytes);
+        return ((long) (this.current + 1) << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private ByteBuffer nextSlab() {
+        if (this.slabs.size() < this.maximumSlabs) {
+            final ByteBuffer slab = ByteBuffer.allocateDirect(this.slabSize);
+            this.slabs.add(slab);
+            this.current = this.slabs.size() - 1;
+            return slab;
+        }
+
+        // recycle the oldest slab, evicting any entries still stored within it
+        this.current = (this.current + 1) % this.slabs.size();
+        for (final Map.Entry<EntityMeta, KeyTable> entry : this.index.entrySet()) {
+            final KeyTable entries = entry.getValue();
+            final int evicted = entries.rehash(entries.hashes.length, this.current);
+            if (evicted > 0) {
+                this.counters.of(entry.getKey()).evict(evicted);
+                this.size -= evicted;
+            }
+        }
+        final ByteBuffer oldest = this.slabs.get(this.current);
+        oldest.clear();
+        return oldest;
+    }
+
+    private static <T> T cast(final Object instance, final Class<T> clazz) {
+        if (null == instance) {
+            return null;
+        }
+        if (null == clazz || Object.class.equals(clazz)) {
+            return (T) instance;
+        }
+        try {
+            return clazz.cast(instance);
+        } catch (final ClassCastException e) {
+            logger.warn("Unable to convert [" + instance + "] to type [" + clazz + "].");
+            return null;
+        }
+    }
+}
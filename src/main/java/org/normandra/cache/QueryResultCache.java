@@ -0,0 +1,482 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.meta.EntityMeta;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a cache of query results, keyed by entity type, query text and parameters
+ * <p>
+ * Entity queries store only the primary keys of their results, which are resolved back into entities through the entity
+ * cache.  Property queries store their (immutable) rows, and are invalidated by a write to any of the participating types
+ * they were stored with - or to any type at all, when none were given.  Results computed while a participating type was
+ * written are never stored, so a slow query cannot re-insert stale results after an invalidation.
+ */
+public class QueryResultCache {
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private static final long REFERENCE_SIZE = 8;
+
+    private final int maximumEntries;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<EntityMeta, Set<Key>> byType = new HashMap<>();
+
+    private final Set<Key> anyType = new HashSet<>();
+
+    private final ConcurrentMap<EntityMeta, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private long estimatedBytes = 0;
+
+    private static final class Key {
+        private final EntityMeta meta;
+
+        private final String query;
+
+        private final Map<String, Object> parameters;
+
+        private final int hash;
+
+        private Key(final EntityMeta meta, final String query, final Map<String, Object> parameters) {
+            this.meta = meta;
+            this.query = query;
+            this.parameters = null == parameters || parameters.isEmpty() ? Collections.emptyMap() : new HashMap<>(parameters);
+            this.hash = Objects.hash(meta, query, this.parameters);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return this.hash == key.hash && Objects.equals(this.meta, key.meta) && Objects.equals(this.query, key.query) && Objects.equals(this.parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> results;
+
+        private final Collection<EntityMeta> types;
+
+        private final long bytes;
+
+        private Entry(final List<?> results, final Collection<EntityMeta> types, final long bytes) {
+            this.results = results;
+            this.types = types;
+            this.bytes = bytes;
+        }
+    }
+
+    public QueryResultCache() {
+        this(1000);
+    }
+
+    public QueryResultCache(final int maximumEntries) {
+        if (maximumEntries <= 0) {
+            throw new IllegalArgumentException("Maximum entries must be positive.");
+        }
+        this.maximumEntries = maximumEntries;
+    }
+
+    /**
+     * @return Returns the cached primary keys for an entity query, or null if not cached.
+     */
+    public List<Object> getKeys(final EntityMeta meta, final String query, final Map<String, Object> parameters) {
+        if (null == meta || null == query) {
+            return null;
+        }
+        return (List<Object>) this.lookup(new Key(meta, query, parameters));
+    }
+
+    /**
+     * @return Returns the cached rows for a property query, or null if not cached.
+     */
+    public List<Map<String, Object>> getRows(final String query, final Map<String, Object> parameters) {
+        if (null == query) {
+            return null;
+        }
+        return (List<Map<String, Object>>) this.lookup(new Key(null, query, parameters));
+    }
+
+    /**
+     * @return Returns a token to be passed to {@link #putKeys} once the query has been run.
+     */
+    public long begin(final EntityMeta meta) {
+        if (null == meta) {
+            return this.generation.get();
+        }
+        return this.generations.computeIfAbsent(meta, m -> new AtomicLong()).get();
+    }
+
+    /**
+     * @return Returns a token to be passed to {@link #putRows} for a query over the given types, or any type if empty.
+     */
+    public long begin(final Collection<EntityMeta> types) {
+        if (null == types || types.isEmpty()) {
+            return this.generation.get();
+        }
+        // generations only ever increase, so the sum changes whenever any of them does
+        long sum = 0;
+        for (final EntityMeta meta : types) {
+            sum += this.begin(meta);
+        }
+        return sum;
+    }
+
+    public boolean putKeys(final EntityMeta meta, final String query, final Map<String, Object> parameters, final List<?> keys, final long token) {
+        if (null == meta || null == query || null == keys) {
+            return false;
+        }
+        long bytes = ENTRY_OVERHEAD + query.length() * 2L;
+        for (final Object key : keys) {
+            if (null == key) {
+                return false;
+            }
+            bytes += REFERENCE_SIZE + ColumnWeigher.estimate(key);
+        }
+        final List<Object> copy = Collections.unmodifiableList(new ArrayList<>(keys));
+        return this.store(new Key(meta, query, parameters), new Entry(copy, Collections.singleton(meta), bytes), token);
+    }
+
+    public boolean putRows(final String query, final Map<String, Object> parameters, final List<Map<String, Object>> rows, final long token) {
+        return this.putRows(query, parameters, rows, Collections.emptyList(), token);
+    }
+
+    /**
+     * cache the rows of a property query, which is invalidated by writes to the given types (or any type, if empty)
+     */
+    public boolean putRows(final String query, final Map<String, Object> parameters, final List<Map<String, Object>> rows, final Collection<EntityMeta> types, final long token) {
+        if (null == query || null == rows || null == types) {
+            return false;
+        }
+        long bytes = ENTRY_OVERHEAD + query.length() * 2L;
+        final List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+        for (final Map<String, Object> row : rows) {
+            bytes += ENTRY_OVERHEAD;
+            for (final Map.Entry<String, Object> entry : row.entrySet()) {
+                bytes += 4 * REFERENCE_SIZE + ColumnWeigher.estimate(entry.getKey()) + ColumnWeigher.estimate(entry.getValue());
+            }
+            copy.add(Collections.unmodifiableMap(new LinkedHashMap<>(row)));
+        }
+        final Collection<EntityMeta> participating = types.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(types));
+        return this.store(new Key(null, query, parameters), new Entry(Collections.unmodifiableList(copy), participating, bytes), token);
+    }
+
+    /**
+     * drop all results which depend on the given entity type
+     */
+    synchronized public void invalidate(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        this.generations.computeIfAbsent(meta, m -> new AtomicLong()).incrementAndGet();
+        this.generation.incrementAndGet();
+
+        final Set<Key> keys = this.byType.remove(meta);
+        if (keys != null) {
+            keys.forEach(this::discard);
+        }
+        if (!this.anyType.isEmpty()) {
+            new ArrayList<>(this.anyType).forEach(this::discard);
+        }
+        this.invalidations.increment();
+    }
+
+    synchronized public void clear() {
+        this.generations.values().forEach(AtomicLong::incrementAndGet);
+        this.generation.incrementAndGet();
+        this.entries.clear();
+        this.byType.clear();
+        this.anyType.clear();
+        this.estimatedBytes = 0;
+    }
+
+    public int getMaximumEntries() {
+        return this.maximumEntries;
+    }
+
+    synchronized public int size() {
+        return this.entries.size();
+    }
+
+    synchronized public long getEstimatedBytes() {
+        return this.estimatedBytes;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return this.invalidations.sum();
+    }
+
+    public double getHitRatio() {
+        final long hit = this.hits.sum();
+        final long total = hit + this.misses.sum();
+        return total > 0 ? (double) hit / total : 0;
+    }
+
+    synchronized private List<?> lookup(final Key key) {
+        final Entry entry = this.entries.get(key);
+        if (null == entry) {
+            this.misses.increment();
+            return null;
+        }
+        this.hits.increment();
+        return entry.results;
+    }
+
+    synchronized private boolean store(final Key key, final Entry entry, final long token) {
+        if (this.begin(entry.types) != token) {
+            // a participating type was written while the query ran
+            return false;
+        }
+        this.discard(key);
+        this.entries.put(key, entry);
+        this.estimatedBytes += entry.bytes;
+        if (entry.types.isEmpty()) {
+            this.anyType.add(key);
+        }
+        for (final EntityMeta meta : entry.types) {
+            this.byType.computeIfAbsent(meta, m -> new HashSet<>()).add(key);
+        }
+        while (this.entries.size() > this.maximumEntries) {
+            this.discard(this.entries.keySet().iterator().next());
+        }
+        return true;
+    }
+
+    private void discard(final Key key) {
+        final Entry entry = this.entries.remove(key);
+        if (null == entry) {
+            return;
+        }
+        this.estimatedBytes -= entry.bytes;
+        if (entry.types.isEmpty()) {
+            this.anyType.remove(key);
+        }
+        for (final EntityMeta meta : entry.types) {
+            final Set<Key> keys = this.byType.get(meta);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.cache;
+
+import org.normandra.EntitySession;
+import org.normandra.NormandraException;
+import org.normandra.association.LazyLoadedCollection;
+import org.normandra.data.ColumnAccessor;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.JoinCollectionMeta;
+import org.normandra.meta.JoinColumnMeta;
+import org.normandra.meta.MappedColumnMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * a second-level cache of detached column data, shared by all sessions of an entity manager factory
+ * <p>
+ * Only column values are stored, never live entity instances - each session hydrates its own copy so that entities are
+ * never shared between threads.  Entries are invalidated when an entity manager saves or deletes the same key, and again
+ * once that unit of work commits or rolls back.  Data read from the store is only cached if no entity of the same type
+ * was invalidated while it was read (see {@link #begin(EntityMeta)}), so a slow reader cannot re-insert a row that was
+ * replaced in the meantime.  Writes made directly through a {@link org.normandra.DatabaseSession} bypass the entity
+ * manager and must be followed by {@link #invalidate(EntityMeta, Object)}.
+ * <p>
+ * A {@link Source} such as a {@link CacheSnapshot} is restored one type at a time, the first time that type is looked up.
+ */
+public class SharedDataCache {
+    private static final Logger logger = LoggerFactory.getLogger(SharedDataCache.class);
+
+    /**
+     * entries restored into the cache on the first lookup of a type
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * store the entries of a type through {@link #restore(EntityMeta, Object, Map)}
+         */
+        void restore(EntityMeta meta, SharedDataCache cache) throws IOException;
+    }
+
+    private static final class Pending {
+        private final Source source;
+
+        private final Set<EntityMeta> restored = ConcurrentHashMap.newKeySet();
+
+        private Pending(final Source source) {
+            this.source = source;
+        }
+    }
+
+    private final List<Pending> sources = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentMap<EntityMeta, ConcurrentMap<Object, Map<ColumnMeta, Object>>> cache = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<EntityMeta, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final long maximumSize;
+
+    public SharedDataCache() {
+        this(Long.MAX_VALUE);
+    }
+
+    public SharedDataCache(final long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public long size() {
+        return this.size.get();
+    }
+
+    public void clear() {
+        this.sources.clear();
+        for (final EntityMeta meta : new ArrayList<>(this.cache.keySet())) {
+            this.clearType(meta);
+        }
+    }
+
+    public void clearType(final EntityMeta meta) {
+        if (null == meta) {
+            return;
+        }
+        for (final Pending pending : this.sources) {
+            pending.restored.add(meta);
+        }
+        final Map<Object, Map<ColumnMeta, Object>> entries = this.cache.remove(meta);
+        if (entries != null) {
+            this.size.addAndGet(-entries.size());
+        }
+    }
+
+    /**
+     * restore entries from a source lazily, each type is restored the first time it is looked up
+     * <p>
+     * Restored entries never replace data already cached, and stop once the cache reaches its maximum size.
+     */
+    public void addSource(final Source source) {
+        if (null == source) {
+            throw new IllegalArgumentException();
+        }
+        this.sources.add(new Pending(source));
+    }
+
+    /**
+     * @return Returns true if a source has not yet restored entries of the type.
+     */
+    public boolean isPending(final EntityMeta meta) {
+        for (final Pending pending : this.sources) {
+            if (!pending.restored.contains(meta)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * store column data from a source, unless the key is already cached or the cache is full
+     *
+     * @return Returns true if the entry was stored.
+     */
+    public boolean restore(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> data) {
+        if (null == meta || null == key || null == data || data.isEmpty()) {
+            return false;
+        }
+        if (this.isFull()) {
+            return false;
+        }
+        final ConcurrentMap<Object, Map<ColumnMeta, Object>> entries = this.cache.computeIfAbsent(meta, m -> new ConcurrentHashMap<>());
+        if (entries.putIfAbsent(key, Collections.unmodifiableMap(copy(data))) != null) {
+            return false;
+        }
+        if (this.size.incrementAndGet() > this.maximumSize) {
+            this.evict(entries, key);
+        }
+        return true;
+    }
+
+    public boolean isFull() {
+        return this.size.get() >= this.maximumSize;
+    }
+
+    public Set<EntityMeta> getTypes() {
+        return Collections.unmodifiableSet(this.cache.keySet());
+    }
+
+    /**
+     * visit each cached entry of a type, the data passed to the consumer must not be modified
+     */
+    public void forEach(final EntityMeta meta, final BiConsumer<Object, Map<ColumnMeta, Object>> consumer) {
+        if (null == meta || null == consumer) {
+            return;
+        }
+        this.restore(meta);
+        final Map<Object, Map<ColumnMeta, Object>> entries = this.cache.get(meta);
+        if (entries != null) {
+            entries.forEach(consumer);
+        }
+    }
+
+    public boolean contains(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        this.restore(meta);
+        final Map<Object, Map<ColumnMeta, Object>> entries = this.cache.get(meta);
+        return entries != null && entries.containsKey(key);
+    }
+
+    /**
+     * @return Returns a private copy of the cached column data, or null if not present.
+     */
+    public Map<ColumnMeta, Object> get(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return null;
+        }
+        this.restore(meta);
+        final Map<Object, Map<ColumnMeta, Object>> entries = this.cache.get(meta);
+        if (null == entries) {
+            return null;
+        }
+        final Map<ColumnMeta, Object> data = entries.get(key);
+        if (null == data) {
+            return null;
+        }
+        return copy(data);
+    }
+
+    /**
+     * @return Returns a token to be passed to {@link #put(EntityMeta, Object, EntitySession, long)}, taken before the
+     * entity is read from the store.
+     */
+    public long begin(final EntityMeta meta) {
+        if (null == meta) {
+            return 0;
+        }
+        return this.generation(meta).get();
+    }
+
+    /**
+     * store column data unconditionally, for data known to be current such as a restored snapshot
+     */
+    public boolean put(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> data) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        if (null == data || data.isEmpty()) {
+            return this.remove(meta, key);
+        }
+        this.store(meta, key, Collections.unmodifiableMap(copy(data)));
+        return true;
+    }
+
+    /**
+     * store column data read from the store, unless an entity of the same type was invalidated since the token was taken
+     */
+    public boolean put(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> data, final long token) {
+        if (null == meta || null == key || null == data || data.isEmpty()) {
+            return false;
+        }
+        final AtomicLong generation = this.generation(meta);
+        if (generation.get() != token) {
+            return false;
+        }
+        final Map<ColumnMeta, Object> entry = Collections.unmodifiableMap(copy(data));
+        final ConcurrentMap<Object, Map<ColumnMeta, Object>> entries = this.store(meta, key, entry);
+        if (generation.get() != token && entries.remove(key, entry)) {
+            // invalidated while storing, the entry may already be stale
+            this.size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * capture the loaded column values of an entity instance read from the store, and store them as detached data
+     *
+     * @param token the token returned by {@link #begin(EntityMeta)} before the instance was read
+     */
+    public boolean put(final EntityMeta meta, final Object instance, final EntitySession session, final long token) {
+        if (null == meta || null == instance) {
+            return false;
+        }
+        final Object key = meta.getId().fromEntity(instance);
+        if (null == key) {
+            return false;
+        }
+        final Map<ColumnMeta, Object> data;
+        try {
+            data = capture(meta, instance, session);
+        } catch (final NormandraException e) {
+            logger.warn("Unable to capture column data for entity [" + meta + "] with key [" + key + "].", e);
+            return false;
+        }
+        return this.put(meta, key, data, token);
+    }
+
+    /**
+     * remove the entry for a written key, and reject data of the same type read before the write
+     */
+    public void invalidate(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return;
+        }
+        this.generation(meta).incrementAndGet();
+        this.remove(meta, key);
+    }
+
+    public boolean remove(final EntityMeta meta, final Object key) {
+        if (null == meta || null == key) {
+            return false;
+        }
+        // restore first, so a source cannot bring back the removed key
+        this.restore(meta);
+        final Map<Object, Map<ColumnMeta, Object>> entries = this.cache.get(meta);
+        if (null == entries) {
+            return false;
+        }
+        if (entries.remove(key) != null) {
+            this.size.decrementAndGet();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @return Returns the loaded column values of an entity instance, with associations stored by key.
+     * <p>
+     * Null values are kept, so hydrating the data does not fetch those columns again.  Inverse (mapped) associations
+     * change with the owning entity rather than this one, and lazy collections not yet loaded are bound to their
+     * session - both are left to be loaded by each session.
+     */
+    static Map<ColumnMeta, Object> capture(final EntityMeta meta, final Object instance, final EntitySession session) throws NormandraException {
+        final Map<ColumnMeta, Object> data = new LinkedHashMap<>();
+        for (final ColumnMeta column : meta) {
+            if (column instanceof MappedColumnMeta) {
+                continue;
+            }
+            final ColumnAccessor accessor = meta.getAccessor(column);
+            if (null == accessor) {
+                continue;
+            }
+            if (column instanceof JoinColumnMeta) {
+                // the key of a lazy association is known without loading it
+                data.put(column, accessor.getValue(instance, session));
+            } else if (accessor.isLoaded(instance)) {
+                final Object value = accessor.getValue(instance, session);
+                if (column instanceof JoinCollectionMeta && value instanceof LazyLoadedCollection) {
+                    continue;
+                }
+                data.put(column, value);
+            }
+        }
+        return data;
+    }
+
+    private void restore(final EntityMeta meta) {
+        if (this.sources.isEmpty()) {
+            return;
+        }
+        for (final Pending pending : this.sources) {
+            if (pending.restored.contains(meta)) {
+                continue;
+            }
+            synchronized (pending) {
+                if (pending.restored.contains(meta)) {
+                    continue;
+                }
+                try {
+                    pending.source.restore(meta, this);
+                } catch (final IOException | RuntimeException e) {
+                    logger.warn("Unable to restore cached entries of type [" + meta + "].", e);
+                }
+                pending.restored.add(meta);
+            }
+        }
+    }
+
+    private AtomicLong generation(final EntityMeta meta) {
+        final AtomicLong existing = this.generations.get(meta);
+        if (existing != null) {
+            return existing;
+        }
+        return this.generations.computeIfAbsent(meta, m -> new AtomicLong());
+    }
+
+    private ConcurrentMap<Object, Map<ColumnMeta, Object>> store(final EntityMeta meta, final Object key, final Map<ColumnMeta, Object> entry) {
+        final ConcurrentMap<Object, Map<ColumnMeta, Object>> entries = this.cache.computeIfAbsent(meta, m -> new ConcurrentHashMap<>());
+        if (null == entries.put(key, entry)) {
+            if (this.size.incrementAndGet() > this.maximumSize) {
+                this.evict(entries, key);
+            }
+        }
+        return entries;
+    }
+
+    private void evict(final Map<Object, Map<ColumnMeta, Object>> preferred, final Object retain) {
+        // approximate eviction - drop any other entry, starting with the type just written
+        while (this.size.get() > this.maximumSize) {
+            if (!this.evictOne(preferred, retain)) {
+                boolean evicted = false;
+                for (final Map<Object, Map<ColumnMeta, Object>> entries : this.cache.values()) {
+                    if (this.evictOne(entries, retain)) {
+                        evicted = true;
+                        break;
+                    }
+                }
+                if (!evicted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean evictOne(final Map<Object, Map<ColumnMeta, Object>> entries, final Object retain) {
+        final Iterator<Object> itr = entries.keySet().iterator();
+        while (itr.hasNext()) {
+            final Object key = itr.next();
+            if (!key.equals(retain) && entries.remove(key) != null) {
+                this.size.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<ColumnMeta, Object> copy(final Map<ColumnMeta, Object> data) {
+        final Map<ColumnMeta, Object> copy = new LinkedHashMap<>(data.size());
+        for (final Map.Entry<ColumnMeta, Object> entry : data.entrySet()) {
+            final Object value = entry.getValue();
+            if (value instanceof List) {
+                copy.put(entry.getKey(), new ArrayList<>((List<?>) value));
+            } else if (value instanceof Set) {
+                copy.put(entry.getKey(), new LinkedHashSet<>((Set<?>) value));
+            } else if (value instanceof Map) {
+                copy.put(entry.getKey(), new LinkedHashMap<>((Map<?, ?>) value));
+            } else if (value instanceof Date) {
+                copy.put(entry.getKey(), new Date(((Date) value).getTime()));
+            } else if (value instanceof byte[]) {
+                copy.put(entry.getKey(), ((byte[]) value).clone());
+            } else {
+                copy.put(entry.getKey(), value);
+            }
+        }
+        return copy;
+    }
+}
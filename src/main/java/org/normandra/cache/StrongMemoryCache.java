@@ -16,6 +16,8 @@ public class StrongMemoryCache implements EntityCache {
 
     private final MapFactory maps;
 
+    private final CacheCounters counters = new CacheCounters();
+
     public static class Factory implements EntityCacheFactory {
         private final MapFactory maps;
 
@@ -64,14 +66,17 @@ public class StrongMemoryCache implements EntityCache {
 
         final Map<Object, Object> entities = this.cache.get(meta);
         if (null == entities) {
+            this.counters.of(meta).miss();
             return null;
         }
 
         final Object instance = entities.get(key);
         if (null == instance) {
             entities.remove(key);
+            this.counters.of(meta).miss();
             return null;
         }
+        this.counters.of(meta).hit();
 
         if (null == clazz || Object.class.equals(clazz)) {
             return (T) instance;
@@ -98,6 +103,7 @@ public class StrongMemoryCache implements EntityCache {
                 map.put(key, item);
             }
         }
+        this.counters.of(meta).find(keys.size(), map.size());
         return Collections.unmodifiableMap(map);
     }
 
@@ -160,6 +166,7 @@ public class StrongMemoryCache implements EntityCache {
         try {
             if (instance != null) {
                 entities.put(key, instance);
+                this.counters.of(meta).put();
                 return true;
             } else {
                 return entities.remove(key) != null;
@@ -169,4 +176,12 @@ public class StrongMemoryCache implements EntityCache {
             return false;
         }
     }
+
+    @Override
+    public Map<EntityMeta, CacheStats> getStats() {
+        return this.counters.snapshot(meta -> {
+            final Map<Object, Object> entities = this.cache.get(meta);
+            return null == entities ? 0 : entities.size();
+        });
+    }
 }
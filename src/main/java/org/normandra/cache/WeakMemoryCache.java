@@ -195,26 +195,15 @@
 package org.normandra.cache;
 
 import org.normandra.meta.EntityMeta;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.*;
 
 /**
  * a simple in-memory cache, where the cached entities are held with a weak reference
  */
-public class WeakMemoryCache implements EntityCache {
-    private static final Logger logger = LoggerFactory.getLogger(WeakMemoryCache.class);
-
-    private static final int purgeDelayCount = 500;
-
-    private final Map<EntityMeta, Map<Object, WeakReference>> cache = new TreeMap<>();
-
-    private final MapFactory maps;
-
-    private int purgeCount = 0;
-
+public class WeakMemoryCache extends ReferenceMemoryCache {
     public static class Factory implements EntityCacheFactory {
         private final MapFactory maps;
 
@@ -231,180 +220,34 @@ public class WeakMemoryCache implements EntityCache {
         }
     }
 
-    public WeakMemoryCache(final MapFactory f) {
-        if (null == f) {
-            throw new IllegalArgumentException();
-        }
-        this.maps = f;
-    }
+    private static class WeakEntry extends WeakReference<Object> implements Entry {
+        private final EntityMeta meta;
 
-    @Override
-    public void clear() {
-        this.cache.values().forEach(Map::clear);
-        this.cache.clear();
-    }
-
-    @Override
-    public void clearType(final EntityMeta meta) {
-        if (null == meta) {
-            return;
-        }
-        final Map<Object, WeakReference> entities = this.cache.remove(meta);
-        if (entities != null && !entities.isEmpty()) {
-            entities.clear();
-        }
-    }
+        private final Object key;
 
-    @Override
-    public <T> T get(final EntityMeta meta, final Object key, final Class<T> clazz) {
-        if (null == meta || null == key) {
-            return null;
-        }
-
-        final Map<Object, WeakReference> entities = this.cache.get(meta);
-        if (null == entities) {
-            return null;
-        }
-
-        final WeakReference reference = entities.get(key);
-        if (null == reference) {
-            return null;
-        }
-        final Object instance = reference.get();
-        if (null == instance) {
-            entities.remove(key);
-            return null;
-        }
-
-        if (null == clazz || Object.class.equals(clazz)) {
-            return (T) instance;
-        }
-
-        try {
-            return clazz.cast(instance);
-        } catch (final ClassCastException e) {
-            logger.warn("Unable to convert [" + instance + "] to type [" + clazz + "].");
-            return null;
-        }
-    }
-
-    @Override
-    public <T> Map<Object, T> find(final EntityMeta meta, final Collection<?> keys, final Class<T> clazz) {
-        if (null == meta || null == keys || keys.isEmpty()) {
-            return Collections.emptyMap();
+        private WeakEntry(final EntityMeta meta, final Object key, final Object instance, final ReferenceQueue<Object> queue) {
+            super(instance, queue);
+            this.meta = meta;
+            this.key = key;
         }
 
-        final Map<Object, T> map = new HashMap<>();
-        for (final Object key : keys) {
-            final T item = this.get(meta, key, clazz);
-            if (item != null) {
-                map.put(key, item);
-            }
-        }
-        return Collections.unmodifiableMap(map);
-    }
-
-    @Override
-    public <T> Iterable<T> listByType(final EntityMeta meta, final Class<T> clazz) {
-        if (null == meta) {
-            return Collections.emptyList();
-        }
-
-        final Map<Object, WeakReference> map = this.cache.get(meta);
-        if (null == map || map.isEmpty()) {
-            return Collections.emptyList();
+        @Override
+        public EntityMeta getMeta() {
+            return this.meta;
         }
 
-        final List items = new ArrayList<>(map.size());
-        for (final WeakReference ref : map.values()) {
-            final Object item = ref.get();
-            if (item != null) {
-                if (null == clazz || Object.class.equals(clazz)) {
-                    items.add(item);
-                } else {
-                    try {
-                        items.add(clazz.cast(item));
-                    } catch (final ClassCastException e) {
-                        logger.warn("Unable to convert [" + item + "] to type [" + clazz + "].");
-                    }
-                }
-            }
+        @Override
+        public Object getKey() {
+            return this.key;
         }
-        return Collections.unmodifiableList(items);
     }
 
-    @Override
-    public boolean remove(final EntityMeta meta, final Object key) {
-        if (null == meta || null == meta.getId() || null == key) {
-            return false;
-        }
-
-        final Map<Object, WeakReference> entities = this.cache.get(meta);
-        if (null == entities) {
-            return false;
-        }
-
-        if (entities.remove(key) != null) {
-            this.checkPurge();
-            return true;
-        } else {
-            return false;
-        }
+    public WeakMemoryCache(final MapFactory f) {
+        super(f);
     }
 
     @Override
-    public boolean put(final EntityMeta meta, final Object key, final Object instance) {
-        if (null == meta || null == key) {
-            return false;
-        }
-
-        Map<Object, WeakReference> entities = this.cache.get(meta);
-        if (null == entities) {
-            entities = this.maps.create();
-            this.cache.put(meta, entities);
-        }
-
-        try {
-            final boolean updated;
-            if (instance != null) {
-                final WeakReference reference = new WeakReference<>(instance);
-                entities.put(key, reference);
-                updated = true;
-            } else {
-                updated = entities.remove(key) != null;
-            }
-            if (updated) {
-                this.checkPurge();
-                return true;
-            } else {
-                return false;
-            }
-        } catch (final Exception e) {
-            logger.warn("Unable to assign key [" + key + "] to cache entity [" + instance + "] of type [" + meta + "].", e);
-            return false;
-        }
-    }
-
-    synchronized private void checkPurge() {
-        this.purgeCount++;
-        if (this.purgeCount >= purgeDelayCount) {
-            try {
-                for (final Map.Entry<EntityMeta, Map<Object, WeakReference>> mapEntry : new ArrayList<>(this.cache.entrySet())) {
-                    final Map<Object, WeakReference> map = mapEntry.getValue();
-                    if (map != null) {
-                        for (final Map.Entry<Object, WeakReference> entry : new ArrayList<>(map.entrySet())) {
-                            if (null == entry.getValue().get()) {
-                                map.remove(entry.getKey());
-                            }
-                        }
-                    }
-                    if (null == map || map.isEmpty()) {
-                        this.cache.remove(mapEntry.getKey());
-                    }
-                }
-            } finally {
-                this.purgeCount = 0;
-            }
-        }
+    protected Reference createReference(final EntityMeta meta, final Object key, final Object instance, final ReferenceQueue<Object> queue) {
+        return new WeakEntry(meta, key, instance, queue);
     }
 }
@@ -217,15 +217,7 @@ public class BasicColumnAccessor extends FieldColumnAccessor implements ColumnAc
             throw new IllegalArgumentException();
         }
         this.clazz = clazz;
-        if (this.clazz.equals(long.class) ||
-                this.clazz.equals(int.class) ||
-                this.clazz.equals(char.class) ||
-                this.clazz.equals(short.class) ||
-                this.clazz.equals(boolean.class)) {
-            this.primitive = true;
-        } else {
-            this.primitive = false;
-        }
+        this.primitive = this.clazz.isPrimitive();
     }
 
 
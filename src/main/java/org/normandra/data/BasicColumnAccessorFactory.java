@@ -195,6 +195,7 @@
 package org.normandra.data;
 
 import org.normandra.association.BasicElementIdentity;
+import org.normandra.enhance.EnhancedEntities;
 import org.normandra.meta.EntityMeta;
 
 import java.lang.reflect.Field;
@@ -207,6 +208,13 @@ import java.lang.reflect.Field;
 public class BasicColumnAccessorFactory implements ColumnAccessorFactory {
     @Override
     public ColumnAccessor createBasic(Field field, Class<?> clazz) {
+        final int index = EnhancedEntities.indexOf(field);
+        if (index >= 0 && clazz != null && clazz.equals(field.getType())) {
+            return new EnhancedColumnAccessor(field, clazz, index);
+        }
+        if (clazz != null && clazz.isPrimitive() && field != null && clazz.equals(field.getType())) {
+            return PrimitiveColumnAccessor.create(field);
+        }
         return new BasicColumnAccessor(field, clazz);
     }
 
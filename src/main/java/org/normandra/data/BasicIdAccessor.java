@@ -194,6 +194,7 @@
 
 package org.normandra.data;
 
+import org.normandra.NormandraException;
 import org.normandra.meta.ColumnMeta;
 
 import java.lang.reflect.Field;
@@ -210,12 +211,15 @@ import java.util.Map;
 public class BasicIdAccessor extends FieldColumnAccessor implements IdAccessor {
     private final ColumnMeta primary;
 
+    private final PrimitiveColumnAccessor primitive;
+
     public BasicIdAccessor(final Field field, final ColumnMeta key) {
         super(field);
         if (null == key) {
             throw new IllegalArgumentException();
         }
         this.primary = key;
+        this.primitive = field.getType().isPrimitive() ? PrimitiveColumnAccessor.create(field) : null;
     }
 
     @Override
@@ -224,12 +228,38 @@ public class BasicIdAccessor extends FieldColumnAccessor implements IdAccessor {
             return null;
         }
         try {
+            if (this.primitive != null) {
+                return this.fromPrimitive(entity);
+            }
             return this.get(entity);
         } catch (final Exception e) {
             throw new IllegalStateException("Unable to get field [" + this.getField().getName() + "] from entity [" + entity + "].", e);
         }
     }
 
+    private Object fromPrimitive(final Object entity) throws NormandraException {
+        if (!this.getField().getDeclaringClass().isInstance(entity)) {
+            return null;
+        }
+        final Class<?> type = this.getField().getType();
+        if (long.class.equals(type)) {
+            return this.primitive.getLong(entity);
+        } else if (int.class.equals(type)) {
+            return (int) this.primitive.getLong(entity);
+        } else if (short.class.equals(type)) {
+            return (short) this.primitive.getLong(entity);
+        } else if (byte.class.equals(type)) {
+            return (byte) this.primitive.getLong(entity);
+        } else if (char.class.equals(type)) {
+            return (char) this.primitive.getLong(entity);
+        } else if (double.class.equals(type)) {
+            return this.primitive.getDouble(entity);
+        } else if (float.class.equals(type)) {
+            return (float) this.primitive.getDouble(entity);
+        }
+        return this.primitive.getBoolean(entity);
+    }
+
     @Override
     public Map<ColumnMeta, Object> fromKey(final Object key) {
         if (null == key) {
@@ -0,0 +1,443 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.data;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.LoaderClassPath;
+import javassist.Modifier;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.MappedColumnMeta;
+import org.normandra.util.CompositeClassLoader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * generates bulk accessor classes with javassist
+ * <p>
+ * Each generated class holds the getter and setter handles of its fields in static final fields, so the jit treats
+ * them as constants, and reads or writes all fields in straight-line bytecode.  Handles of primitive fields keep their
+ * primitive type and are invoked with exact primitive signatures, boxing and unboxing in the generated code rather
+ * than through {@link MethodHandle#asType}.  Only plain field columns
+ * ({@link BasicColumnAccessor} and {@link MethodHandleColumnAccessor}) are covered - joins, collections and embedded
+ * columns keep using their column accessors.
+ */
+public class BulkAccessorGenerator {
+    private static final String HANDLE = "Ljava/lang/invoke/MethodHandle;";
+
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private static final String ACCESSOR = "(Ljava/lang/Object;[Ljava/lang/Object;)V";
+
+    /**
+     * descriptors and wrapper classes of primitive field types
+     */
+    private static final Map<Class<?>, String> descriptors = new HashMap<>();
+
+    private static final Map<Class<?>, Class<?>> wrappers = new HashMap<>();
+
+    static {
+        descriptors.put(long.class, "J");
+        descriptors.put(int.class, "I");
+        descriptors.put(short.class, "S");
+        descriptors.put(byte.class, "B");
+        descriptors.put(char.class, "C");
+        descriptors.put(double.class, "D");
+        descriptors.put(float.class, "F");
+        descriptors.put(boolean.class, "Z");
+        wrappers.put(long.class, Long.class);
+        wrappers.put(int.class, Integer.class);
+        wrappers.put(short.class, Short.class);
+        wrappers.put(byte.class, Byte.class);
+        wrappers.put(char.class, Character.class);
+        wrappers.put(double.class, Double.class);
+        wrappers.put(float.class, Float.class);
+        wrappers.put(boolean.class, Boolean.class);
+    }
+
+    private static final AtomicLong counter = new AtomicLong();
+
+    /**
+     * handles waiting to be picked up by the static initializer of a generated class
+     */
+    private static final Map<String, MethodHandle[]> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @return Returns a bulk accessor for the given concrete class of the entity, or null if no column qualifies.
+     */
+    public static BulkAccessor generate(final EntityMeta meta, final Class<?> type) throws Exception {
+        if (null == meta || null == type) {
+            throw new IllegalArgumentException();
+        }
+
+        // find plain field columns declared by the concrete type or its super-classes
+        final List<ColumnMeta> columns = new ArrayList<>();
+        final List<Field> fields = new ArrayList<>();
+        final List<ColumnMeta> all = new ArrayList<>(meta.getColumns());
+        final int[] slots = new int[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            slots[i] = -1;
+            final ColumnMeta column = all.get(i);
+            final Field field = getField(meta.getAccessor(column));
+            if (column instanceof MappedColumnMeta || null == field || !field.getDeclaringClass().isAssignableFrom(type)) {
+                continue;
+            }
+            slots[i] = columns.size();
+            columns.add(column);
+            fields.add(field);
+        }
+        if (columns.isEmpty()) {
+            return null;
+        }
+
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle[] handles = new MethodHandle[fields.size() * 2];
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            if (!field.isAccessible()) {
+                field.setAccessible(true);
+            }
+            // only the receiver is erased, primitive values keep their type
+            final Class<?> value = field.getType().isPrimitive() ? field.getType() : Object.class;
+            handles[2 * i] = lookup.unreflectGetter(field).asType(MethodType.methodType(value, Object.class));
+            handles[2 * i + 1] = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, value));
+        }
+
+        final String name = BulkAccessor.class.getName() + "$" + type.getSimpleName() + "$" + counter.incrementAndGet();
+        final ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(BulkAccessor.class.getClassLoader()));
+        final CtClass generated = pool.makeClass(name, pool.get(BulkAccessor.class.getName()));
+        generated.setModifiers(Modifier.PUBLIC | Modifier.FINAL);
+        final CtClass handleType = pool.get(MethodHandle.class.getName());
+        final StringBuilder initializer = new StringBuilder();
+        initializer.append("{ java.lang.invoke.MethodHandle[] h = ").append(BulkAccessorGenerator.class.getName()).append(".take(\"").append(name).append("\");");
+        for (int i = 0; i < fields.size(); i++) {
+            for (final String prefix : Arrays.asList("g", "s")) {
+                final CtField handle = new CtField(handleType, prefix + i, generated);
+                handle.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+                generated.addField(handle);
+            }
+            initializer.append(" g").append(i).append(" = h[").append(2 * i).append("];");
+            initializer.append(" s").append(i).append(" = h[").append(2 * i + 1).append("];");
+        }
+        initializer.append(" }");
+        final CtConstructor clinit = generated.makeClassInitializer();
+        clinit.setBody(initializer.toString());
+        generated.addConstructor(CtNewConstructor.defaultConstructor(generated));
+
+        final ClassFile file = generated.getClassFile();
+        final List<Class<?>> types = new ArrayList<>(fields.size());
+        for (final Field field : fields) {
+            types.add(field.getType());
+        }
+        file.addMethod(createRead(file, name, types));
+        final MethodInfo write = createWrite(file, name, types);
+        file.addMethod(write);
+        write.rebuildStackMap(pool);
+
+        final byte[] bytes = generated.toBytecode();
+        generated.detach();
+
+        // resolve normandra types from our loader, and anything else through the entity loader
+        final List<ClassLoader> loaders = new ArrayList<>(1);
+        loaders.add(type.getClassLoader());
+        final CompositeClassLoader loader = new CompositeClassLoader(BulkAccessor.class.getClassLoader(), loaders);
+        pending.put(name, handles);
+        try {
+            final Class<?> clazz = loader.define(name, bytes);
+            final BulkAccessor accessor = (BulkAccessor) Instantiators.newInstance(clazz);
+            accessor.init(columns, slots);
+            return accessor;
+        } finally {
+            pending.remove(name);
+        }
+    }
+
+    /**
+     * called from the static initializer of generated classes
+     */
+    public static MethodHandle[] take(final String name) {
+        final MethodHandle[] handles = pending.remove(name);
+        if (null == handles) {
+            throw new IllegalStateException("No handles registered for bulk accessor [" + name + "].");
+        }
+        return handles;
+    }
+
+    private static MethodInfo createRead(final ClassFile file, final String name, final List<Class<?>> types) {
+        // for each field: values[i] = g<i>.invokeExact(entity), boxed with valueOf for primitive fields
+        final Bytecode code = new Bytecode(file.getConstPool(), 4, 3);
+        for (int i = 0; i < types.size(); i++) {
+            final String descriptor = descriptors.get(types.get(i));
+            code.addAload(2);
+            code.addIconst(i);
+            code.addGetstatic(name, "g" + i, HANDLE);
+            code.addAload(1);
+            if (null == descriptor) {
+                code.addInvokevirtual(MethodHandle.class.getName(), "invokeExact", "(" + OBJECT + ")" + OBJECT);
+            } else {
+                final String wrapper = wrappers.get(types.get(i)).getName();
+                code.addInvokevirtual(MethodHandle.class.getName(), "invokeExact", "(" + OBJECT + ")" + descriptor);
+                code.addInvokestatic(wrapper, "valueOf", "(" + descriptor + ")L" + wrapper.replace('.', '/') + ";");
+            }
+            code.addOpcode(Opcode.AASTORE);
+        }
+        code.addOpcode(Opcode.RETURN);
+        final MethodInfo method = new MethodInfo(file.getConstPool(), "read", ACCESSOR);
+        method.setAccessFlags(javassist.bytecode.AccessFlag.PROTECTED);
+        method.setCodeAttribute(code.toCodeAttribute());
+        return method;
+    }
+
+    private static MethodInfo createWrite(final ClassFile file, final String name, final List<Class<?>> types) {
+        // for each field: value = values[i]; if (value != null) s<i>.invokeExact(entity, value), unboxed for primitive fields
+        final Bytecode code = new Bytecode(file.getConstPool(), 4, 4);
+        for (int i = 0; i < types.size(); i++) {
+            final String descriptor = descriptors.get(types.get(i));
+            code.addAload(2);
+            code.addIconst(i);
+            code.addOpcode(Opcode.AALOAD);
+            code.addAstore(3);
+            code.addAload(3);
+            final int branch = code.currentPc();
+            code.addOpcode(Opcode.IFNULL);
+            code.addIndex(0);
+            code.addGetstatic(name, "s" + i, HANDLE);
+            code.addAload(1);
+            code.addAload(3);
+            if (null == descriptor) {
+                code.addInvokevirtual(MethodHandle.class.getName(), "invokeExact", "(" + OBJECT + OBJECT + ")V");
+            } else {
+                final String unbox = "unbox" + Character.toUpperCase(types.get(i).getName().charAt(0)) + types.get(i).getName().substring(1);
+                code.addInvokestatic(BulkAccessor.class.getName(), unbox, "(" + OBJECT + ")" + descriptor);
+                code.addInvokevirtual(MethodHandle.class.getName(), "invokeExact", "(" + OBJECT + descriptor + ")V");
+            }
+            code.write16bit(branch + 1, code.currentPc() - branch);
+        }
+        code.addOpcode(Opcode.RETURN);
+        final MethodInfo method = new MethodInfo(file.getConstPool(), "write", ACCESSOR);
+        method.setAccessFlags(javassist.bytecode.AccessFlag.PROTECTED);
+        method.setCodeAttribute(code.toCodeAttribute());
+        return method;
+    }
+
+    private static Field getField(final ColumnAccessor accessor) {
+        if (accessor instanceof BasicColumnAccessor) {
+            return ((BasicColumnAccessor) accessor).getField();
+        }
+        if (accessor instanceof MethodHandleColumnAccessor) {
+            return ((MethodHandleColumnAccessor) accessor).getField();
+        }
+        return null;
+    }
+
+    private BulkAccessorGenerator() {
+
+    }
+}
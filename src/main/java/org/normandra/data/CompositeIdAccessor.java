@@ -210,12 +210,15 @@ import java.util.Map;
 public class CompositeIdAccessor extends FieldColumnAccessor implements IdAccessor {
     private final Map<ColumnMeta, ColumnAccessor> accessors;
 
+    private final Instantiator<?> instantiator;
+
     public CompositeIdAccessor(final Field field, final Map<ColumnMeta, ColumnAccessor> m) {
         super(field);
         if (null == m || m.isEmpty()) {
             throw new IllegalArgumentException("Accessors cannot be null/empty.");
         }
         this.accessors = new LinkedHashMap<>(m);
+        this.instantiator = Instantiators.get(field.getType());
     }
 
     @Override
@@ -261,7 +264,7 @@ public class CompositeIdAccessor extends FieldColumnAccessor implements IdAccess
             return null;
         }
         try {
-            final Object instance = this.getField().getType().newInstance();
+            final Object instance = this.instantiator.newInstance();
             for (final Map.Entry<ColumnMeta, ColumnAccessor> entry : this.accessors.entrySet()) {
                 final ColumnMeta column = entry.getKey();
                 final ColumnAccessor accessor = entry.getValue();
@@ -281,7 +284,7 @@ public class CompositeIdAccessor extends FieldColumnAccessor implements IdAccess
             return null;
         }
         try {
-            final Object instance = this.getField().getType().newInstance();
+            final Object instance = this.instantiator.newInstance();
             for (final Map.Entry<ColumnMeta, ColumnAccessor> entry : this.accessors.entrySet()) {
                 final ColumnMeta column = entry.getKey();
                 final ColumnAccessor accessor = entry.getValue();
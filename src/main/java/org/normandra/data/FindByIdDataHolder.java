@@ -196,6 +196,8 @@ package org.normandra.data;
 
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
+import org.normandra.association.BasicElementIdentity;
+import org.normandra.association.BatchLoader;
 import org.normandra.meta.EntityMeta;
 
 import java.util.ArrayList;
@@ -225,6 +227,10 @@ public class FindByIdDataHolder implements DataHolder {
         this.session = session;
         this.entity = entity;
         this.keys = new ArrayList<>(keys);
+        final BatchLoader loader = null == session ? null : session.getBatchLoader();
+        if (loader != null) {
+            loader.register(entity, this.keys);
+        }
     }
 
     @Override
@@ -244,7 +250,12 @@ public class FindByIdDataHolder implements DataHolder {
     private Collection<?> ensureResults() throws NormandraException {
         if (!this.loaded.get()) {
             try {
-                this.items = this.session.get(this.entity, this.keys.toArray());
+                final BatchLoader loader = this.session.getBatchLoader();
+                if (loader != null) {
+                    this.items = loader.get(this.entity, new BasicElementIdentity(this.entity), this.keys, 0);
+                } else {
+                    this.items = this.session.get(this.entity, this.keys.toArray());
+                }
                 this.loaded.getAndSet(true);
             } catch (final Exception e) {
                 throw new NormandraException("Unable to query lazy loaded results from [" + this.entity + "] with ids " + this.keys + ".", e);
@@ -196,8 +196,12 @@ package org.normandra.data;
 
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
+import org.normandra.association.BatchLoader;
 import org.normandra.association.ElementIdentity;
 import org.normandra.association.LazyLoadedCollection;
+import org.normandra.enhance.EnhancedEntities;
+import org.normandra.enhance.EnhancedEntity;
+import org.normandra.enhance.EnhancedState;
 import org.normandra.meta.EntityMeta;
 import org.normandra.association.LazyEntityList;
 import org.normandra.association.LazyEntitySet;
@@ -224,12 +228,36 @@ public class ManyJoinColumnAccessor extends FieldColumnAccessor implements Colum
 
     private final boolean lazy;
 
+    /**
+     * index of the field in a build-time enhanced class, or -1
+     */
+    private final int enhanced;
+
+    private final int batchSize;
+
     public ManyJoinColumnAccessor(final Field field, final EntityMeta meta, final boolean lazy, final ElementIdentity factory)
     {
         super(field);
         this.factory = factory;
         this.entity = meta;
         this.lazy = lazy;
+        this.enhanced = EnhancedEntities.indexOf(field);
+        this.batchSize = BatchLoader.getBatchSize(field);
+    }
+
+    private EnhancedState getState(final Object entity)
+    {
+        if (this.enhanced < 0 || !(entity instanceof EnhancedEntity) || !this.getField().getDeclaringClass().isInstance(entity))
+        {
+            return null;
+        }
+        return ((EnhancedEntity) entity).$$_normandra_getState();
+    }
+
+    private boolean isPending(final Object entity)
+    {
+        final EnhancedState state = this.getState(entity);
+        return state != null && state.isPending(this.enhanced);
     }
 
     public EntityMeta getEntity()
@@ -245,7 +273,7 @@ public class ManyJoinColumnAccessor extends FieldColumnAccessor implements Colum
     @Override
     public boolean isLoaded(final Object entity) throws NormandraException
     {
-        if (null == entity)
+        if (null == entity || this.isPending(entity))
         {
             return false;
         }
@@ -277,6 +305,11 @@ public class ManyJoinColumnAccessor extends FieldColumnAccessor implements Colum
 
     protected final Collection<?> getCollection(final Object entity) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException
     {
+        if (this.isPending(entity))
+        {
+            // create the deferred lazy collection, which does not query until iterated
+            ((EnhancedEntity) entity).$$_normandra_write(this.enhanced, this.getState(entity).load(this.enhanced));
+        }
         final Object obj = this.get(entity);
         if (null == obj)
         {
@@ -342,19 +375,24 @@ public class ManyJoinColumnAccessor extends FieldColumnAccessor implements Colum
     @Override
     public boolean setValue(final Object entity, final DataHolder data, final EntitySession session) throws NormandraException
     {
+        final EnhancedState state = this.getState(entity);
+        if (state != null)
+        {
+            state.setLoader(this.enhanced, null);
+        }
+        if (this.lazy && state != null)
+        {
+            // enhanced classes create the lazy collection on first read of the field
+            ((EnhancedEntity) entity).$$_normandra_write(this.enhanced, null);
+            state.setLoader(this.enhanced, () -> this.createLazy(session, data));
+            return true;
+        }
         if (this.lazy)
         {
             try
             {
                 // setup lazy loaded collection
-                if (Set.class.isAssignableFrom(this.getField().getType()))
-                {
-                    return this.set(entity, new LazyEntitySet(session, this.entity, data, this.factory));
-                }
-                else
-                {
-                    return this.set(entity, new LazyEntityList(session, this.entity, data, this.factory));
-                }
+                return this.set(entity, this.createLazy(session, data));
             }
             catch (final Exception e)
             {
@@ -396,4 +434,16 @@ public class ManyJoinColumnAccessor extends FieldColumnAccessor implements Colum
             }
         }
     }
-}
+
+    private Collection<?> createLazy(final EntitySession session, final DataHolder data)
+    {
+        if (Set.class.isAssignableFrom(this.getField().getType()))
+        {
+            return new LazyEntitySet(session, this.entity, data, this.factory, this.batchSize);
+        }
+        else
+        {
+            return new LazyEntityList(session, this.entity, data, this.factory, this.batchSize);
+        }
+    }
+}
\ No newline at end of file
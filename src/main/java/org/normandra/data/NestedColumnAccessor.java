@@ -209,12 +209,15 @@ public class NestedColumnAccessor extends FieldColumnAccessor implements ColumnA
 
     private final Class<?> type;
 
+    private final Instantiator<?> instantiator;
+
     public NestedColumnAccessor(final Field field, final ColumnAccessor delegate) {
         super(field);
         if (null == delegate) {
             throw new IllegalArgumentException();
         }
         this.type = field.getType();
+        this.instantiator = Instantiators.get(this.type);
         this.delegate = delegate;
     }
 
@@ -256,7 +259,7 @@ public class NestedColumnAccessor extends FieldColumnAccessor implements ColumnA
                 return false;
             }
             try {
-                base = this.type.newInstance();
+                base = this.instantiator.newInstance();
                 this.set(entity, base);
             } catch (final Exception e) {
                 throw new NormandraException("Unable to instantiate new instance of nested/embedded type [" + this.type + "] for property [" + this.getField().getName() + "].", e);
@@ -197,7 +197,13 @@ package org.normandra.data;
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
 import org.normandra.association.AssociationUtils;
+import org.normandra.association.BatchLoader;
 import org.normandra.association.ElementIdentity;
+import org.normandra.association.ManyToOneAccessor;
+import org.normandra.enhance.EnhancedEntities;
+import org.normandra.enhance.EnhancedEntity;
+import org.normandra.enhance.EnhancedState;
+import org.normandra.enhance.LazyLoader;
 import org.normandra.meta.EntityMeta;
 
 import java.lang.reflect.Field;
@@ -215,15 +221,38 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
 
     private final boolean lazy;
 
+    /**
+     * index of the field in a build-time enhanced class, or -1
+     */
+    private final int enhanced;
+
+    private final int batchSize;
+
     public SingleJoinColumnAccessor(final Field field, final EntityMeta meta, final boolean lazy, final ElementIdentity factory) {
         super(field);
         this.entity = meta;
         this.lazy = lazy;
         this.factory = factory;
+        this.enhanced = EnhancedEntities.indexOf(field);
+        this.batchSize = BatchLoader.getBatchSize(field);
+    }
+
+    /**
+     * @return Returns the pending loader of an enhanced entity, if the association is not yet loaded.
+     */
+    private KeyLoader getPending(final Object entity) {
+        if (this.enhanced < 0 || !(entity instanceof EnhancedEntity) || !this.getField().getDeclaringClass().isInstance(entity)) {
+            return null;
+        }
+        final LazyLoader loader = ((EnhancedEntity) entity).$$_normandra_getState().getLoader(this.enhanced);
+        return loader instanceof KeyLoader ? (KeyLoader) loader : null;
     }
 
     @Override
     public boolean isEmpty(final Object entity) throws NormandraException {
+        if (this.getPending(entity) != null) {
+            return false;
+        }
         try {
             return this.get(entity) == null;
         } catch (final Exception e) {
@@ -233,6 +262,9 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
 
     @Override
     public boolean isLoaded(final Object entity) throws NormandraException {
+        if (this.getPending(entity) != null) {
+            return false;
+        }
         try {
             final Object association = this.get(entity);
             if (null == association) {
@@ -249,6 +281,10 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
 
     @Override
     public Object getValue(final Object entity, EntitySession session) throws NormandraException {
+        final KeyLoader pending = this.getPending(entity);
+        if (pending != null) {
+            return pending.key;
+        }
         final Object associatedEntity;
         try {
             associatedEntity = this.get(entity);
@@ -258,11 +294,21 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
         if (null == associatedEntity) {
             return null;
         }
+        final Object proxyKey = AssociationUtils.getKey(associatedEntity);
+        if (proxyKey != null) {
+            // the fields of an unloaded proxy are not yet assigned, use the key it was created with
+            return proxyKey;
+        }
         return this.factory.fromEntity(session, associatedEntity);
     }
 
     @Override
     public boolean setValue(final Object entity, final DataHolder data, final EntitySession session) throws NormandraException {
+        final EnhancedState state = this.enhanced >= 0 && entity instanceof EnhancedEntity && this.getField().getDeclaringClass().isInstance(entity) ?
+                ((EnhancedEntity) entity).$$_normandra_getState() : null;
+        if (state != null) {
+            state.setLoader(this.enhanced, null);
+        }
         if (null == data || data.isEmpty()) {
             try {
                 this.set(entity, null);
@@ -274,8 +320,13 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
             final Object key = data.get();
             try {
                 final Object associated;
-                if (this.lazy) {
-                    associated = AssociationUtils.createProxy(this.entity, key, session, this.factory);
+                if (this.lazy && state != null) {
+                    // enhanced classes load the association on first read of the field
+                    ((EnhancedEntity) entity).$$_normandra_write(this.enhanced, null);
+                    state.setLoader(this.enhanced, new KeyLoader(this.entity, key, session, this.factory, this.batchSize));
+                    return true;
+                } else if (this.lazy) {
+                    associated = AssociationUtils.createProxy(this.entity, key, session, this.factory, this.batchSize);
                 } else {
                     associated = this.factory.toEntity(session, key);
                 }
@@ -286,4 +337,20 @@ public class SingleJoinColumnAccessor extends FieldColumnAccessor implements Col
             }
         }
     }
+
+    private static final class KeyLoader implements LazyLoader {
+        private final Object key;
+
+        private final ManyToOneAccessor accessor;
+
+        private KeyLoader(final EntityMeta meta, final Object key, final EntitySession session, final ElementIdentity factory, final int batchSize) {
+            this.key = key;
+            this.accessor = new ManyToOneAccessor(meta, key, session, factory, batchSize);
+        }
+
+        @Override
+        public Object load() throws NormandraException {
+            return this.accessor.get();
+        }
+    }
 }
\ No newline at end of file
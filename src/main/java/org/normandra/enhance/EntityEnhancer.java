@@ -0,0 +1,466 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.enhance;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.CtPrimitiveType;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.annotation.Annotation;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * enhances compiled entity classes with javassist
+ * <p>
+ * An enhanced class implements {@link EnhancedEntity}: it gets read and write methods addressing every mapped field by
+ * index, drops pending {@link LazyLoader}s when fields are assigned within the class, and resolves them when
+ * association fields are read within the class.  Enhanced super-classes are enhanced first and share one index space
+ * with their sub-classes.
+ * <p>
+ * Only non-final instance fields carrying a jpa column or association annotation are enhanced - the same fields
+ * {@link org.normandra.meta.AnnotationParser} maps, as normandra does not persist unannotated fields by default.
+ * Annotated final fields are still mapped, through reflective accessors.
+ * <p>
+ * Used by the normandra maven plugin after compile, or directly on a {@link ClassPool}.
+ */
+public class EntityEnhancer {
+    static final String PREFIX = "$$_normandra_";
+
+    public static final String FIELDS = PREFIX + "FIELDS";
+
+    public static final String OFFSET = PREFIX + "OFFSET";
+
+    private static final String STATE = PREFIX + "state";
+
+    private static final Set<String> ENTITY_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "javax.persistence.Entity", "javax.persistence.MappedSuperclass", "javax.persistence.Embeddable"));
+
+    private static final Set<String> COLUMN_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "javax.persistence.Column", "javax.persistence.Embedded", "javax.persistence.EmbeddedId",
+            "javax.persistence.Id", "javax.persistence.ElementCollection", "javax.persistence.JoinColumn",
+            "javax.persistence.OneToMany", "javax.persistence.ManyToOne", "javax.persistence.ManyToMany",
+            "javax.persistence.OneToOne"));
+
+    private static final Set<String> ASSOCIATION_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "javax.persistence.OneToMany", "javax.persistence.ManyToOne", "javax.persistence.ManyToMany",
+            "javax.persistence.OneToOne"));
+
+    private final Predicate<String> scope;
+
+    public EntityEnhancer() {
+        this((x) -> true);
+    }
+
+    /**
+     * @param scope selects the classes which may be modified, i.e. the classes of the module being built
+     */
+    public EntityEnhancer(final Predicate<String> scope) {
+        if (null == scope) {
+            throw new IllegalArgumentException();
+        }
+        this.scope = scope;
+    }
+
+    /**
+     * @return Returns true if the class is an entity, embeddable or mapped super-class which is not yet enhanced.
+     */
+    public boolean isEnhanceable(final CtClass type) {
+        if (null == type || type.isInterface() || type.isFrozen() || hasField(type, FIELDS)) {
+            return false;
+        }
+        if (!this.scope.test(type.getName())) {
+            return false;
+        }
+        return hasAnnotation(getAnnotations(type.getClassFile2().getAttribute(AnnotationsAttribute.visibleTag)), ENTITY_ANNOTATIONS);
+    }
+
+    /**
+     * enhance a class and any enhanceable super-classes
+     *
+     * @return Returns true if the class was enhanced.
+     */
+    public boolean enhance(final CtClass type) throws CannotCompileException, NotFoundException {
+        if (!this.isEnhanceable(type)) {
+            return false;
+        }
+
+        final CtClass parent = type.getSuperclass();
+        if (parent != null) {
+            this.enhance(parent);
+        }
+        final boolean root = null == parent || !isEnhanced(parent);
+        final int offset = root ? 0 : getOffset(parent) + getFieldCount(parent);
+
+        final List<CtField> fields = getMappedFields(type);
+        final Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            indices.put(fields.get(i).getName(), offset + i);
+        }
+        final Set<String> associations = new HashSet<>();
+        for (final CtField field : fields) {
+            if (hasAnnotation(getAnnotations(field.getFieldInfo2().getAttribute(AnnotationsAttribute.visibleTag)), ASSOCIATION_ANNOTATIONS)) {
+                associations.add(field.getName());
+            }
+        }
+
+        if (root) {
+            final CtClass stateType = type.getClassPool().get(EnhancedState.class.getName());
+            final CtField state = new CtField(stateType, STATE, type);
+            state.setModifiers(Modifier.PROTECTED | Modifier.TRANSIENT);
+            type.addField(state);
+            type.addInterface(type.getClassPool().get(EnhancedEntity.class.getName()));
+            type.addMethod(CtNewMethod.make(
+                    "public " + EnhancedState.class.getName() + " " + PREFIX + "getState() {" +
+                            " if (this." + STATE + " == null) { this." + STATE + " = new " + EnhancedState.class.getName() + "(); }" +
+                            " return this." + STATE + "; }", type));
+        }
+
+        final StringBuilder names = new StringBuilder();
+        for (final CtField field : fields) {
+            names.append(names.length() > 0 ? ", " : "").append('"').append(field.getName()).append('"');
+        }
+        type.addField(CtField.make("public static final String[] " + FIELDS + " = new String[] {" + names + "};", type));
+        type.addField(CtField.make("public static final int " + OFFSET + " = " + offset + ";", type));
+
+        for (final CtField field : fields) {
+            if (associations.contains(field.getName())) {
+                final int index = indices.get(field.getName());
+                final String typeName = field.getType().getName();
+                type.addMethod(CtNewMethod.make(
+                        "public " + typeName + " " + PREFIX + "get_" + field.getName() + "() {" +
+                                " if (this." + STATE + " != null && this." + STATE + ".isPending(" + index + ")) {" +
+                                " this." + field.getName() + " = (" + typeName + ") this." + STATE + ".load(" + index + "); }" +
+                                " return this." + field.getName() + "; }", type));
+            }
+        }
+
+        final String fallback = root ?
+                "throw new IllegalArgumentException(\"Unknown enhanced field index [\" + $1 + \"].\");" :
+                "return super." + PREFIX + "read($1);";
+        final StringBuilder read = new StringBuilder("public Object " + PREFIX + "read(int index) { switch ($1) {");
+        for (final CtField field : fields) {
+            read.append(" case ").append(indices.get(field.getName())).append(": return ($w) this.").append(field.getName()).append(';');
+        }
+        read.append(" default: ").append(fallback).append(" } }");
+        type.addMethod(CtMethod.make(read.toString(), type));
+
+        final String writeFallback = root ?
+                "throw new IllegalArgumentException(\"Unknown enhanced field index [\" + $1 + \"].\");" :
+                "super." + PREFIX + "write($1, $2); return;";
+        final StringBuilder write = new StringBuilder("public void " + PREFIX + "write(int index, Object value) { switch ($1) {");
+        for (final CtField field : fields) {
+            write.append(" case ").append(indices.get(field.getName())).append(": this.").append(field.getName())
+                    .append(" = ").append(unwrap(field.getType(), "$2")).append("; return;");
+        }
+        write.append(" default: ").append(writeFallback).append(" } }");
+        type.addMethod(CtMethod.make(write.toString(), type));
+
+        // intercept field access in existing code, skipping the generated methods
+        final String className = type.getName();
+        type.instrument(new ExprEditor() {
+            @Override
+            public void edit(final FieldAccess access) throws CannotCompileException {
+                if (access.where().getName().startsWith(PREFIX) || access.isStatic() || !className.equals(access.getClassName())) {
+                    return;
+                }
+                final Integer index = indices.get(access.getFieldName());
+                if (null == index) {
+                    return;
+                }
+                if (access.isWriter()) {
+                    access.replace("{ $proceed($$); ((" + EnhancedEntity.class.getName() + ") $0).$$_normandra_getState().assigned(" + index + "); }");
+                } else if (associations.contains(access.getFieldName())) {
+                    access.replace("{ $_ = $0." + PREFIX + "get_" + access.getFieldName() + "(); }");
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return Returns true if the class or a super-class was enhanced.
+     */
+    public static boolean isEnhanced(final CtClass type) {
+        try {
+            for (CtClass current = type; current != null; current = current.getSuperclass()) {
+                for (final CtClass item : current.getInterfaces()) {
+                    if (EnhancedEntity.class.getName().equals(item.getName())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (final NotFoundException e) {
+            return false;
+        }
+    }
+
+    private static int getOffset(final CtClass type) throws NotFoundException {
+        for (CtClass current = type; current != null; current = current.getSuperclass()) {
+            if (hasField(current, OFFSET)) {
+                final Object value = current.getField(OFFSET).getConstantValue();
+                return value instanceof Integer ? (Integer) value : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int getFieldCount(final CtClass type) throws NotFoundException {
+        for (CtClass current = type; current != null; current = current.getSuperclass()) {
+            if (hasField(current, FIELDS)) {
+                return getMappedFields(current).size();
+            }
+        }
+        return 0;
+    }
+
+    private static boolean hasField(final CtClass type, final String name) {
+        for (final CtField field : type.getDeclaredFields()) {
+            if (name.equals(field.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<CtField> getMappedFields(final CtClass type) {
+        final List<CtField> list = new ArrayList<>();
+        for (final CtField field : type.getDeclaredFields()) {
+            final int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers)) {
+                continue;
+            }
+            if (hasAnnotation(getAnnotations(field.getFieldInfo2().getAttribute(AnnotationsAttribute.visibleTag)), COLUMN_ANNOTATIONS)) {
+                list.add(field);
+            }
+        }
+        return list;
+    }
+
+    private static Annotation[] getAnnotations(final Object attribute) {
+        if (attribute instanceof AnnotationsAttribute) {
+            return ((AnnotationsAttribute) attribute).getAnnotations();
+        }
+        return new Annotation[0];
+    }
+
+    private static boolean hasAnnotation(final Annotation[] annotations, final Set<String> names) {
+        for (final Annotation annotation : annotations) {
+            if (names.contains(annotation.getTypeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String unwrap(final CtClass type, final String value) {
+        if (type.isPrimitive()) {
+            // callers pass the exact wrapper type, anything else is converted by reflection
+            final CtPrimitiveType primitive = (CtPrimitiveType) type;
+            return "((" + primitive.getWrapperName() + ") " + value + ")." + primitive.getGetMethodName() + "()";
+        }
+        return "(" + type.getName() + ") " + value;
+    }
+}
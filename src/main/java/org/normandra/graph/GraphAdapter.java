@@ -40,6 +40,9 @@ abstract public class GraphAdapter extends AbstractTransactional implements Data
         } else {
             addNode(meta, element);
         }
+
+        // key now exists, drop any negative lookup
+        this.getCache().clearAbsent(meta, meta.getId().fromEntity(element));
     }
 
     @Override
@@ -50,7 +50,9 @@ public class GraphManager extends EntityManager {
             throw new IllegalArgumentException("Entity [" + entity.getClass() + "] is not node type.");
         }
 
-        return this.graph.addNode(meta, entity);
+        final Node<T> node = this.graph.addNode(meta, entity);
+        this.invalidate(meta, entity, true);
+        return node;
     }
 
     /**
@@ -22,6 +22,6 @@ public class GraphManagerFactory extends EntityManagerFactory {
     @Override
     public GraphManager create() throws NormandraException {
         this.ensureDatabase();
-        return new GraphManager(this.database.createGraph(), this.graphMeta);
+        return this.configure(new GraphManager(this.database.createGraph(), this.graphMeta));
     }
 }
@@ -195,6 +195,7 @@
 package org.normandra.meta;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.normandra.cache.CachedIndex;
 import org.normandra.data.*;
 import org.normandra.util.ArraySet;
 import org.normandra.util.CaseUtils;
@@ -210,6 +211,9 @@ import java.lang.reflect.Type;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -220,6 +224,10 @@ import java.util.stream.Collectors;
 public class AnnotationParser {
     private static final Logger logger = LoggerFactory.getLogger(AnnotationParser.class);
 
+    private static final List<Class<? extends Annotation>> JPA_ANNOTATIONS = Collections.unmodifiableList(Arrays.asList(
+            Column.class, Embedded.class, EmbeddedId.class, Id.class, ElementCollection.class,
+            JoinColumn.class, OneToMany.class, ManyToOne.class, ManyToMany.class, OneToOne.class));
+
     private final SecureRandom random = new SecureRandom();
 
     private final List<Class> classes;
@@ -228,7 +236,13 @@ public class AnnotationParser {
 
     private final Map<Class, EntityMeta> entities = new LinkedHashMap<>();
 
-    private final Set<Field> configuredFields = new HashSet<>();
+    private final Set<Field> configuredFields = ConcurrentHashMap.newKeySet();
+
+    private final Map<Class<?>, List<Field>> persistentFields = new ConcurrentHashMap<>();
+
+    private Map<Class<?>, ClassDescriptor> descriptors = Collections.emptyMap();
+
+    private ForkJoinPool pool = null;
 
     public AnnotationParser(final ColumnAccessorFactory factory, final Class clazz, final Class... list) {
         if (null == factory || null == clazz) {
@@ -259,70 +273,42 @@ public class AnnotationParser {
     }
 
     public Set<EntityMeta> read() {
-        // read first pass for all entities
-        final List<Class> simpleTypes = new ArrayList<>();
-        final List<Class> inheritedTypes = new ArrayList<>();
-        for (final Class<?> clazz : this.classes) {
-            final int num = this.findHierarchy(clazz).size();
-            if (num > 1) {
-                inheritedTypes.add(clazz);
-            } else if (num == 1) {
-                simpleTypes.add(clazz);
-            }
-        }
-        for (final Class<?> entityClass : simpleTypes) {
-            // create entity first
-            final String name = this.getEntity(entityClass);
-            final String table = this.getTable(entityClass);
-            final EntityMeta meta = new EntityMeta(name, table, Collections.singleton(entityClass));
-            this.entities.put(entityClass, meta);
-
-            // configure entity
-            this.readFirstPass(meta);
-            this.readIdAccessor(meta);
-        }
-        while (!inheritedTypes.isEmpty()) {
-            // create complex inherited types second
-            final List<Class> relatedTypes = new ArrayList<>();
-            final Class<?> entityClass = inheritedTypes.remove(0);
-            final Map<Class, Entity> entityHierarchy = this.findHierarchy(entityClass);
-            relatedTypes.add(entityClass);
-            for (final Class<?> otherType : new ArrayList<>(inheritedTypes)) {
-                final Collection<Class> otherHierarchy = new HashSet<>(this.findHierarchy(otherType).keySet());
-                otherHierarchy.retainAll(entityHierarchy.keySet());
-                if (!otherHierarchy.isEmpty() && inheritedTypes.remove(otherType)) {
-                    relatedTypes.add(otherType);
-                }
-            }
-            final EntityMeta meta;
-            if (relatedTypes.size() > 1) {
-                final Set<Class> allTypes = new HashSet<>();
-                for (final Class<?> type : relatedTypes) {
-                    allTypes.addAll(this.findHierarchy(type).keySet());
-                }
-                final Set<Class> commonTypes = new HashSet<>(allTypes);
-                for (final Class<?> type : relatedTypes) {
-                    commonTypes.retainAll(this.findHierarchy(type).keySet());
-                }
-                final Class<?> commonType = commonTypes.isEmpty() ? entityClass : commonTypes.iterator().next();
-                final String name = this.getEntity(commonType);
-                final String table = this.getTable(commonType);
-                meta = new EntityMeta(name, table, relatedTypes);
-            } else {
-                final Class<?> singleType = relatedTypes.get(0);
-                final String name = this.getEntity(singleType);
-                final String table = this.getTable(singleType);
-                meta = new EntityMeta(name, table, Collections.singleton(singleType));
-            }
-            relatedTypes.forEach((x) -> this.entities.put(x, meta));
+        return this.read(this.classes);
+    }
+
+    /**
+     * read the given subset of classes, which must not refer to entities outside of already read or given classes
+     */
+    Set<EntityMeta> read(final Collection<Class> types) {
+        // read first pass for all entities, each hierarchy independent of the others
+        final List<List<Class>> groups = this.groupHierarchies(types);
+        final List<EntityMeta> metas = this.map(groups, this::readGroup);
+        for (int i = 0; i < groups.size(); i++) {
+            final EntityMeta meta = metas.get(i);
+            groups.get(i).forEach((x) -> this.entities.put(x, meta));
+        }
 
-            // configure entity
-            this.readFirstPass(meta);
-            this.readIdAccessor(meta);
+        // resolve joins, each independent set of entities in parallel but in a deterministic order within a set
+        if (null == this.pool) {
+            this.readJoins(types);
+        } else {
+            this.map(this.partition(groups), (x) -> this.readJoins(x));
+        }
+
+        // done
+        return Collections.unmodifiableSet(new TreeSet<>(metas));
+    }
+
+    private Set<EntityMeta> readJoins(final Collection<Class> types) {
+        final Set<EntityMeta> set = new TreeSet<>();
+        for (final Class<?> clazz : types) {
+            final EntityMeta meta = this.entities.get(clazz);
+            if (meta != null) {
+                set.add(meta);
+            }
         }
 
         // ensure we read second pass
-        final Set<EntityMeta> set = new TreeSet<>(this.entities.values());
         for (final EntityMeta entity : set) {
             this.readSecondPass(entity);
         }
@@ -335,7 +321,7 @@ public class AnnotationParser {
         }
 
         // read named queries
-        for (final Class<?> clazz : this.classes) {
+        for (final Class<?> clazz : types) {
             final EntityMeta meta = this.entities.get(clazz);
             if (meta != null) {
                 for (final QueryMeta query : this.getQueries(clazz)) {
@@ -344,8 +330,165 @@ public class AnnotationParser {
             }
         }
 
-        // done
-        return Collections.unmodifiableSet(set);
+        // compile into immutable, indexed form
+        for (final EntityMeta entity : set) {
+            entity.freeze();
+        }
+        return set;
+    }
+
+    /**
+     * group classes sharing an entity hierarchy, simple types first
+     */
+    private List<List<Class>> groupHierarchies(final Collection<Class> types) {
+        final List<Class> list = new ArrayList<>(types);
+        final List<List<Class<?>>> hierarchies = this.map(list, this::getEntityHierarchy);
+        final List<List<Class>> simpleTypes = new ArrayList<>();
+        final Map<Class, List<Class>> inheritedTypes = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            final List<Class<?>> hierarchy = hierarchies.get(i);
+            if (hierarchy.size() > 1) {
+                // single inheritance - two hierarchies overlap if and only if they share the top-most entity
+                final Class<?> root = hierarchy.get(hierarchy.size() - 1);
+                inheritedTypes.computeIfAbsent(root, (x) -> new ArrayList<>()).add(list.get(i));
+            } else if (hierarchy.size() == 1) {
+                simpleTypes.add(Collections.singletonList(list.get(i)));
+            }
+        }
+        final List<List<Class>> groups = new ArrayList<>(simpleTypes.size() + inheritedTypes.size());
+        groups.addAll(simpleTypes);
+        groups.addAll(inheritedTypes.values());
+        return groups;
+    }
+
+    private EntityMeta readGroup(final List<Class> relatedTypes) {
+        final EntityMeta meta;
+        if (relatedTypes.size() > 1) {
+            // most specific common entity, in hierarchy order
+            final Set<Class> commonTypes = new LinkedHashSet<>(this.getEntityHierarchy(relatedTypes.get(0)));
+            for (final Class<?> type : relatedTypes) {
+                commonTypes.retainAll(this.getEntityHierarchy(type));
+            }
+            final Class<?> commonType = commonTypes.isEmpty() ? relatedTypes.get(0) : commonTypes.iterator().next();
+            final String name = this.getEntity(commonType);
+            final String table = this.getTable(commonType);
+            meta = new EntityMeta(name, table, relatedTypes);
+        } else {
+            final Class<?> singleType = relatedTypes.get(0);
+            final String name = this.getEntity(singleType);
+            final String table = this.getTable(singleType);
+            meta = new EntityMeta(name, table, Collections.singleton(singleType));
+        }
+
+        // configure entity
+        this.readFirstPass(meta);
+        this.readIdAccessor(meta);
+        return meta;
+    }
+
+    /**
+     * split the registered classes into independent sets, where no entity of one set refers to an entity of another
+     */
+    List<Set<Class>> partition() {
+        return this.partition(this.groupHierarchies(this.classes));
+    }
+
+    private List<Set<Class>> partition(final List<List<Class>> groups) {
+        final Map<Class, Class> roots = new LinkedHashMap<>();
+        for (final List<Class> group : groups) {
+            for (final Class<?> clazz : group) {
+                roots.put(clazz, group.get(0));
+            }
+        }
+        final List<Class> registered = new ArrayList<>(roots.keySet());
+        final Map<Class<?>, List<Class>> references = new HashMap<>();
+        for (final Class<?> clazz : registered) {
+            for (final Class<?> type : this.getHierarchy(clazz)) {
+                for (final Field field : this.getFields(type)) {
+                    for (final Class<?> referenced : getReferencedTypes(field)) {
+                        final List<Class> others = references.computeIfAbsent(referenced, (x) -> registered.stream()
+                                .filter(x::isAssignableFrom)
+                                .collect(Collectors.toList()));
+                        for (final Class<?> other : others) {
+                            union(roots, clazz, other);
+                        }
+                    }
+                }
+            }
+        }
+        final Map<Class, Set<Class>> sets = new LinkedHashMap<>();
+        for (final Class<?> clazz : registered) {
+            sets.computeIfAbsent(find(roots, clazz), (x) -> new LinkedHashSet<>()).add(clazz);
+        }
+        return new ArrayList<>(sets.values());
+    }
+
+    private static Class find(final Map<Class, Class> roots, final Class<?> clazz) {
+        Class root = clazz;
+        while (!root.equals(roots.get(root))) {
+            root = roots.get(root);
+        }
+        // compress path
+        Class current = clazz;
+        while (!current.equals(root)) {
+            final Class next = roots.get(current);
+            roots.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private static void union(final Map<Class, Class> roots, final Class<?> left, final Class<?> right) {
+        final Class leftRoot = find(roots, left);
+        final Class rightRoot = find(roots, right);
+        if (!leftRoot.equals(rightRoot)) {
+            roots.put(rightRoot, leftRoot);
+        }
+    }
+
+    private static Collection<Class<?>> getReferencedTypes(final Field field) {
+        final List<Class<?>> list = new ArrayList<>(2);
+        list.add(field.getType());
+        final OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        if (oneToMany != null && !void.class.equals(oneToMany.targetEntity())) {
+            list.add(oneToMany.targetEntity());
+        }
+        final Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            for (final Type type : ((ParameterizedType) genericType).getActualTypeArguments()) {
+                if (type instanceof Class) {
+                    list.add((Class<?>) type);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return Returns the lower-case entity names, tables and simple class names a class can be looked up by.
+     */
+    Collection<String> getLabels(final Class<?> clazz) {
+        final Set<String> labels = new HashSet<>();
+        labels.add(clazz.getSimpleName().toLowerCase(Locale.ROOT));
+        for (final Class<?> type : this.getEntityHierarchy(clazz)) {
+            final String name = this.getEntity(type);
+            if (name != null) {
+                labels.add(name.toLowerCase(Locale.ROOT));
+            }
+            final String table = this.getTable(type);
+            if (table != null) {
+                labels.add(table.toLowerCase(Locale.ROOT));
+            }
+        }
+        return labels;
+    }
+
+    private <T, R> List<R> map(final List<T> items, final Function<T, R> function) {
+        if (null == this.pool || items.size() < 2) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+        // parallel streams run within the pool that submitted them, and keep encounter order
+        return this.pool.submit(() -> items.parallelStream().map(function).collect(Collectors.toList())).join();
     }
 
     private Collection<IndexMeta> readIndices(final EntityMeta entity) {
@@ -358,6 +501,12 @@ public class AnnotationParser {
             }
             annotations.addAll(this.findAnnotations(entityType, Index.class));
         }
+        final Map<String, CachedIndex> cached = new HashMap<>();
+        for (final Class<?> entityType : entity.getTypes()) {
+            for (final CachedIndex annotation : entityType.getAnnotationsByType(CachedIndex.class)) {
+                cached.put(annotation.name(), annotation);
+            }
+        }
 
         final List<IndexMeta> indices = new ArrayList<>();
         for (final Index annotation : annotations) {
@@ -381,12 +530,36 @@ public class AnnotationParser {
                         defaultName = "index_" + new BigInteger(64, random).toString(32).toLowerCase();
                     }
                 }
-                indices.add(new IndexMeta(defaultName, columns, annotation.unique()));
+                final CachedIndex cache = cached.remove(defaultName);
+                if (cache != null) {
+                    indices.add(new IndexMeta(defaultName, columns, annotation.unique(), true, cache.query()));
+                } else {
+                    indices.add(new IndexMeta(defaultName, columns, annotation.unique()));
+                }
             }
         }
+        if (!cached.isEmpty()) {
+            throw new IllegalStateException("Cached indices " + cached.keySet() + " not found for entity [" + entity + "].");
+        }
         return Collections.unmodifiableCollection(indices);
     }
 
+    /**
+     * use generated descriptors in place of reflective scanning, for the classes they describe
+     */
+    public AnnotationParser withDescriptors(final Map<Class<?>, ClassDescriptor> map) {
+        this.descriptors = null == map ? Collections.emptyMap() : map;
+        return this;
+    }
+
+    /**
+     * read independent entity hierarchies in parallel on the given pool, or sequentially if null
+     */
+    public AnnotationParser withPool(final ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
     private <T> EntityMeta findMeta(final Class<T> entityClass) {
         final EntityMeta meta = this.entities.get(entityClass);
         if (meta != null) {
@@ -409,15 +582,17 @@ public class AnnotationParser {
         }
     }
 
-    private Map<Class, Entity> findHierarchy(final Class<?> entityClass) {
-        final Map<Class, Entity> map = new HashMap<>();
+    /**
+     * @return Returns the entity annotated classes of a hierarchy, from the class itself to the top-most entity.
+     */
+    private List<Class<?>> getEntityHierarchy(final Class<?> entityClass) {
+        final List<Class<?>> list = new ArrayList<>(2);
         for (final Class<?> clazz : this.getHierarchy(entityClass)) {
-            final Entity annotation = clazz.getAnnotation(Entity.class);
-            if (annotation != null) {
-                map.put(clazz, annotation);
+            if (clazz.isAnnotationPresent(Entity.class)) {
+                list.add(clazz);
             }
         }
-        return map;
+        return list;
     }
 
     public boolean isEntity(final Class<?> entityClass) {
@@ -425,6 +600,10 @@ public class AnnotationParser {
     }
 
     String getEntity(final Class<?> entityClass) {
+        final ClassDescriptor descriptor = this.descriptors.get(entityClass);
+        if (descriptor != null) {
+            return descriptor.getEntity();
+        }
         final Entity entity = entityClass.getAnnotation(Entity.class);
         if (null == entity) {
             return null;
@@ -437,6 +616,10 @@ public class AnnotationParser {
     }
 
     String getTable(final Class<?> clazz) {
+        final ClassDescriptor descriptor = this.descriptors.get(clazz);
+        if (descriptor != null) {
+            return descriptor.getTable() != null ? descriptor.getTable() : CaseUtils.camelToSnakeCase(getEntity(clazz));
+        }
         String tableName = CaseUtils.camelToSnakeCase(getEntity(clazz));
         for (final Class<?> hierarchyClass : this.getHierarchy(clazz)) {
             final Table table = hierarchyClass.getAnnotation(Table.class);
@@ -518,7 +701,7 @@ public class AnnotationParser {
         }
 
         // read secondary columns
-        return this.readFields(entity, this.jpaAnnotations()) > 0;
+        return this.readFields(entity, JPA_ANNOTATIONS) > 0;
     }
 
     /**
@@ -651,7 +834,7 @@ public class AnnotationParser {
                 throw new IllegalStateException("Class [" + type + "] does not have Embeddable annotation.");
             }
             final Map<ColumnMeta, ColumnAccessor> map = new LinkedHashMap<>();
-            for (final Field embeddedColumn : new AnnotationParser(this.factory, type).getFields(type)) {
+            for (final Field embeddedColumn : this.getFields(type)) {
                 final Class<?> embeddedClass = embeddedColumn.getType();
                 final String embeddedName = this.getColumnName(embeddedColumn);
                 final String property = field.getName() + "." + embeddedColumn.getName();
@@ -709,7 +892,7 @@ public class AnnotationParser {
             } else {
                 // embeddable column
                 boolean modified = false;
-                for (final Field embeddedColumn : new AnnotationParser(this.factory, type).getFields(type)) {
+                for (final Field embeddedColumn : this.getFields(type)) {
                     final Class<?> embeddedClass = embeddedColumn.getType();
                     final boolean json = !this.findAnnotations(embeddedClass, JsonProperty.class).isEmpty();
                     final String embeddedName = this.getColumnName(embeddedColumn);
@@ -911,17 +1094,23 @@ public class AnnotationParser {
             return Collections.emptyList();
         }
 
-        final Field[] fields = clazz.getDeclaredFields();
-        if (null == fields || fields.length <= 0) {
+        final Collection<Field> candidates;
+        if (JPA_ANNOTATIONS.containsAll(annotations)) {
+            candidates = this.getPersistentFields(clazz);
+        } else {
+            candidates = Arrays.asList(clazz.getDeclaredFields());
+        }
+        if (candidates.isEmpty()) {
             return Collections.emptyList();
         }
 
-        final List<Field> list = new ArrayList<>(fields.length);
-        for (final Field field : fields) {
+        final List<Field> list = new ArrayList<>(candidates.size());
+        for (final Field field : candidates) {
             if (!Modifier.isTransient(field.getModifiers())) {
                 for (final Class<? extends Annotation> annotation : annotations) {
                     if (field.isAnnotationPresent(annotation)) {
                         list.add(field);
+                        break;
                     }
                 }
             }
@@ -930,22 +1119,44 @@ public class AnnotationParser {
     }
 
     private List<Field> getFields(final Class<?> clazz) {
-        return this.getFields(clazz, this.jpaAnnotations());
+        return this.getFields(clazz, JPA_ANNOTATIONS);
     }
 
-    private Collection<Class<? extends Annotation>> jpaAnnotations() {
-        final List<Class<? extends Annotation>> list = new ArrayList<>();
-        list.add(Column.class);
-        list.add(Embedded.class);
-        list.add(EmbeddedId.class);
-        list.add(Id.class);
-        list.add(ElementCollection.class);
-        list.add(JoinColumn.class);
-        list.add(OneToMany.class);
-        list.add(ManyToOne.class);
-        list.add(ManyToMany.class);
-        list.add(OneToOne.class);
-        return Collections.unmodifiableList(list);
+    /**
+     * @return Returns the non-transient fields declared by a class with any jpa annotation, read once per class.
+     */
+    private List<Field> getPersistentFields(final Class<?> clazz) {
+        return this.persistentFields.computeIfAbsent(clazz, (x) -> Collections.unmodifiableList(this.readPersistentFields(x)));
+    }
+
+    private List<Field> readPersistentFields(final Class<?> clazz) {
+        final ClassDescriptor descriptor = this.descriptors.get(clazz);
+        if (descriptor != null) {
+            try {
+                final List<Field> list = new ArrayList<>(descriptor.getFields().size());
+                for (final String name : descriptor.getFields()) {
+                    list.add(clazz.getDeclaredField(name));
+                }
+                return list;
+            } catch (final NoSuchFieldException e) {
+                logger.warn("Generated descriptor for [" + clazz + "] is out of date, falling back to reflection.", e);
+            }
+        }
+
+        final Field[] fields = clazz.getDeclaredFields();
+        final List<Field> list = new ArrayList<>(fields.length);
+        for (final Field field : fields) {
+            if (Modifier.isTransient(field.getModifiers())) {
+                continue;
+            }
+            for (final Class<? extends Annotation> annotation : JPA_ANNOTATIONS) {
+                if (field.isAnnotationPresent(annotation)) {
+                    list.add(field);
+                    break;
+                }
+            }
+        }
+        return list;
     }
 
     private List<Class<?>> getHierarchy(final Class<?> entityClass) {
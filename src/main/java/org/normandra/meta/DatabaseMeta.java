@@ -204,79 +204,74 @@ import java.util.*;
 public class DatabaseMeta implements EntityMetaLookup, Iterable<EntityMeta> {
     private final EntityMetaCollection entities;
 
+    private final Collection<String> tables;
+
     public DatabaseMeta(final Collection<EntityMeta> c) {
         this.entities = new EntityMetaCollection(c);
+        this.tables = getTables(this.entities);
+    }
+
+    static Collection<String> getTables(final Iterable<EntityMeta> entities) {
+        final Set<String> set = new TreeSet<>();
+        for (final EntityMeta meta : entities) {
+            set.add(meta.getTable());
+        }
+        return Collections.unmodifiableCollection(set);
     }
 
     public Set<Class> getTypes() {
-        return this.entities.getTypes();
+        return this.entities().getTypes();
     }
 
     public Collection<String> getTables() {
-        final Set<String> tables = new TreeSet<>();
-        for (final EntityMeta meta : this.entities) {
-            tables.add(meta.getTable());
-        }
-        return Collections.unmodifiableCollection(tables);
+        return this.tables;
+    }
+
+    EntityMetaCollection entities() {
+        return this.entities;
     }
 
     public Collection<EntityMeta> getEntities() {
-        return this.entities.list();
+        return this.entities().list();
     }
 
     public EntityMeta getEntity(final String labelOrType) {
-        if (null == labelOrType || labelOrType.isEmpty()) {
-            return null;
-        }
-        for (final EntityMeta meta : this.entities) {
-            if (labelOrType.equalsIgnoreCase(meta.getName())) {
-                return meta;
-            } else if (labelOrType.equalsIgnoreCase(meta.getTable())) {
-                return meta;
-            } else {
-                for (final Class<?> clazz : meta.getTypes()) {
-                    if (labelOrType.equalsIgnoreCase(clazz.getSimpleName())) {
-                        return meta;
-                    }
-                }
-            }
-        }
-        return null;
+        return this.entities().getMeta(labelOrType);
     }
 
     @Override
     public Iterator<EntityMeta> iterator() {
-        return this.entities.iterator();
+        return this.entities().iterator();
     }
 
     @Override
     public EntityMeta getMeta(Class<?> clazz) {
-        return this.entities.getMeta(clazz);
+        return this.entities().getMeta(clazz);
     }
 
     @Override
     public EntityMeta getMeta(String labelOrType) {
-        return this.entities.getMeta(labelOrType);
+        return this.entities().getMeta(labelOrType);
     }
 
     @Override
     public boolean contains(Class<?> clazz) {
-        return this.entities.contains(clazz);
+        return this.entities().contains(clazz);
     }
 
     @Override
     public boolean contains(EntityMeta meta) {
-        return this.entities.contains(meta);
+        return this.entities().contains(meta);
     }
 
     @Override
     public Collection<EntityMeta> list() {
-        return this.entities.list();
+        return this.entities().list();
     }
 
     @Override
     public int size() {
-        return this.entities.size();
+        return this.entities().size();
     }
 
     @Override
@@ -284,11 +279,11 @@ public class DatabaseMeta implements EntityMetaLookup, Iterable<EntityMeta> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DatabaseMeta that = (DatabaseMeta) o;
-        return Objects.equals(entities, that.entities);
+        return Objects.equals(entities(), that.entities());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(entities);
+        return Objects.hash(entities());
     }
 }
@@ -3,14 +3,69 @@ package org.normandra.meta;
 import org.normandra.data.BasicColumnAccessorFactory;
 import org.normandra.data.ColumnAccessorFactory;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class DatabaseMetaBuilder {
     private final Set<Class> classes = new HashSet<>();
 
     private ColumnAccessorFactory columnAccessorFactory = new BasicColumnAccessorFactory();
 
+    private Map<Class<?>, ClassDescriptor> descriptors = null;
+
+    private ForkJoinPool pool = null;
+
+    private boolean lazy = false;
+
+    /**
+     * read independent entity hierarchies in parallel on the common fork-join pool
+     */
+    public DatabaseMetaBuilder withParallelParsing() {
+        return this.withParallelParsing(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * read independent entity hierarchies in parallel on the given pool, or sequentially if null
+     */
+    public DatabaseMetaBuilder withParallelParsing(final ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * defer parsing of each independent set of entities until one of them is first looked up
+     */
+    public DatabaseMetaBuilder withLazyParsing(final boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    /**
+     * use generated class descriptors in place of reflective scanning, by default all registries on the class path
+     */
+    public DatabaseMetaBuilder withDescriptors(final DescriptorRegistry... registries) {
+        final Map<Class<?>, ClassDescriptor> map = new HashMap<>();
+        if (registries != null) {
+            for (final DescriptorRegistry registry : registries) {
+                for (final ClassDescriptor descriptor : registry.getDescriptors()) {
+                    map.put(descriptor.getType(), descriptor);
+                }
+            }
+        }
+        this.descriptors = map;
+        return this;
+    }
+
+    private Map<Class<?>, ClassDescriptor> descriptors() {
+        if (null == this.descriptors) {
+            this.descriptors = DescriptorRegistry.loadAll();
+        }
+        return this.descriptors;
+    }
+
     public DatabaseMetaBuilder withColumnFactory(final ColumnAccessorFactory factory) {
         this.columnAccessorFactory = factory;
         return this;
@@ -44,15 +99,34 @@ public class DatabaseMetaBuilder {
         return this;
     }
 
+    /**
+     * register all entity classes described by generated registries on the class path
+     */
+    public DatabaseMetaBuilder withGeneratedClasses() {
+        for (final ClassDescriptor descriptor : this.descriptors().values()) {
+            if (descriptor.isEntity()) {
+                this.withClass(descriptor.getType());
+            }
+        }
+        return this;
+    }
+
     public GraphMetaBuilder asGraph() {
         final GraphMetaBuilder graph = new GraphMetaBuilder();
+        graph.withDescriptorMap(this.descriptors);
         return graph
+                .withParallelParsing(this.pool)
                 .withColumnFactory(this.columnAccessorFactory)
                 .withNodeClasses(this.classes);
     }
 
     public DatabaseMeta create() {
-        final AnnotationParser parser = new AnnotationParser(this.columnAccessorFactory, this.classes);
+        final AnnotationParser parser = new AnnotationParser(this.columnAccessorFactory, this.classes)
+                .withDescriptors(this.descriptors())
+                .withPool(this.pool);
+        if (this.lazy) {
+            return new LazyDatabaseMeta(parser);
+        }
         return new DatabaseMeta(parser.read());
     }
 }
@@ -194,14 +194,22 @@
 
 package org.normandra.meta;
 
+import org.normandra.data.BulkAccessor;
+import org.normandra.data.BulkAccessorGenerator;
 import org.normandra.data.ColumnAccessor;
 import org.normandra.data.IdAccessor;
+import org.normandra.data.Instantiator;
+import org.normandra.data.Instantiators;
 import org.normandra.data.NullIdAccessor;
 import org.normandra.generator.IdGenerator;
 import org.normandra.generator.UUIDGenerator;
 import org.normandra.util.ArraySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * entity meta-data
@@ -229,6 +237,140 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
 
     private IdAccessor id = NullIdAccessor.getInstance();
 
+    private volatile Compiled compiled = null;
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityMeta.class);
+
+    private static final DiscriminatorMeta NO_DISCRIMINATOR = new DiscriminatorMeta(null, null);
+
+    /**
+     * precomputed, immutable views of a frozen entity
+     */
+    private static final class Compiled {
+        private final Set<Class<?>> types;
+
+        private final List<ColumnMeta> columns;
+
+        private final Set<ColumnMeta> primaryKeys;
+
+        private final ColumnMeta primaryKey;
+
+        private final List<ColumnMeta> lazyLoaded;
+
+        private final List<ColumnMeta> eagerLoaded;
+
+        private final Map<String, ColumnMeta> columnsByName;
+
+        private final Map<ColumnMeta, Integer> ordinals;
+
+        private final ColumnAccessor[] accessors;
+
+        private final Map<ColumnMeta, ColumnAccessor> accessorMap;
+
+        private final List<IndexMeta> indexed;
+
+        private final Collection<QueryMeta> queries;
+
+        private final Class<?> singleType;
+
+        private final Map<ColumnMeta, Map<Object, Class<?>>> typesByDiscriminator;
+
+        private final Map<Class<?>, DiscriminatorMeta> discriminators;
+
+        /**
+         * discriminators resolved for concrete instance classes, including unmapped (negative) results
+         */
+        private final ConcurrentMap<Class<?>, DiscriminatorMeta> resolvedDiscriminators = new ConcurrentHashMap<>();
+
+        /**
+         * generated bulk accessors by concrete class, including unavailable (empty) results
+         */
+        private final ConcurrentMap<Class<?>, Optional<BulkAccessor>> bulkAccessors = new ConcurrentHashMap<>();
+
+        /**
+         * instantiators by concrete class, held here since {@link Instantiators} only holds them weakly
+         */
+        private final ConcurrentMap<Class<?>, Instantiator<?>> instantiators = new ConcurrentHashMap<>();
+
+        private final int hashCode;
+
+        private Compiled(final EntityMeta meta) {
+            this.types = Collections.unmodifiableSet(new HashSet<>(meta.types));
+            this.columns = Collections.unmodifiableList(new ArrayList<>(meta.columns));
+            final Set<ColumnMeta> keys = new ArraySet<>(4);
+            final List<ColumnMeta> lazy = new ArrayList<>();
+            final List<ColumnMeta> eager = new ArrayList<>();
+            final Map<String, ColumnMeta> names = new HashMap<>(this.columns.size() * 4);
+            final Map<ColumnMeta, Integer> positions = new HashMap<>(this.columns.size() * 2);
+            this.accessors = new ColumnAccessor[this.columns.size()];
+            for (int i = 0; i < this.columns.size(); i++) {
+                final ColumnMeta column = this.columns.get(i);
+                if (column.isPrimaryKey()) {
+                    keys.add(column);
+                }
+                if (column.isLazyLoaded()) {
+                    lazy.add(column);
+                } else {
+                    eager.add(column);
+                }
+                // first column to claim a name wins, matching the order of a linear scan
+                names.putIfAbsent(column.getName().toLowerCase(Locale.ROOT), column);
+                if (column.getProperty() != null) {
+                    names.putIfAbsent(column.getProperty().toLowerCase(Locale.ROOT), column);
+                }
+                positions.put(column, i);
+                this.accessors[i] = meta.accessors.get(column);
+            }
+            this.primaryKeys = Collections.unmodifiableSet(keys);
+            this.primaryKey = keys.isEmpty() ? null : keys.iterator().next();
+            this.lazyLoaded = Collections.unmodifiableList(lazy);
+            this.eagerLoaded = Collections.unmodifiableList(eager);
+            this.columnsByName = names;
+            this.ordinals = positions;
+            this.accessorMap = Collections.unmodifiableMap(new HashMap<>(meta.accessors));
+            this.indexed = Collections.unmodifiableList(new ArrayList<>(meta.indexed));
+            this.queries = Collections.unmodifiableCollection(new ArrayList<>(meta.queries));
+            final boolean single = meta.discriminators.isEmpty() || meta.types.size() == 1;
+            this.singleType = single && !meta.types.isEmpty() ? meta.types.iterator().next() : null;
+            final Map<ColumnMeta, Map<Object, Class<?>>> values = new HashMap<>(2);
+            for (final Map.Entry<Class<?>, DiscriminatorMeta> entry : meta.discriminators.entrySet()) {
+                final DiscriminatorMeta discriminator = entry.getValue();
+                if (discriminator.getValue() != null) {
+                    values.computeIfAbsent(discriminator.getColumn(), (x) -> new HashMap<>()).putIfAbsent(discriminator.getValue(), entry.getKey());
+                }
+            }
+            this.typesByDiscriminator = values;
+            this.discriminators = new HashMap<>(meta.discriminators);
+            this.hashCode = Objects.hash(meta.name, meta.types, meta.table);
+        }
+
+        private DiscriminatorMeta getDiscriminator(final Class<?> clazz) {
+            final DiscriminatorMeta existing = this.resolvedDiscriminators.get(clazz);
+            if (existing != null) {
+                return existing == NO_DISCRIMINATOR ? null : existing;
+            }
+            final DiscriminatorMeta resolved = this.resolveDiscriminator(clazz);
+            this.resolvedDiscriminators.putIfAbsent(clazz, null == resolved ? NO_DISCRIMINATOR : resolved);
+            return resolved;
+        }
+
+        private DiscriminatorMeta resolveDiscriminator(final Class<?> clazz) {
+            // most specific mapped class first, i.e. subclasses or proxies of an entity type
+            for (Class<?> type = clazz; type != null && !Object.class.equals(type); type = type.getSuperclass()) {
+                final DiscriminatorMeta discriminator = this.discriminators.get(type);
+                if (discriminator != null) {
+                    return discriminator;
+                }
+            }
+            for (final Map.Entry<Class<?>, DiscriminatorMeta> entry : this.discriminators.entrySet()) {
+                if (entry.getKey().isAssignableFrom(clazz)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
     public EntityMeta(final String name, final String table, final Collection<Class> types) {
         if (null == name || name.isEmpty()) {
             throw new IllegalArgumentException("Name cannot be empty/null.");
@@ -241,6 +383,25 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         this.types = new HashSet(types);
     }
 
+    /**
+     * compile this entity into an immutable form, after which structural changes are rejected
+     */
+    synchronized void freeze() {
+        if (null == this.compiled) {
+            this.compiled = new Compiled(this);
+        }
+    }
+
+    public boolean isFrozen() {
+        return this.compiled != null;
+    }
+
+    private void ensureMutable() {
+        if (this.compiled != null) {
+            throw new IllegalStateException("Entity [" + this.name + "] is frozen and cannot be modified.");
+        }
+    }
+
     public Map<ColumnMeta, Object> filter(final Map<ColumnMeta, Object> data, final Object instance) {
         if (null == data || data.isEmpty()) {
             return Collections.emptyMap();
@@ -250,10 +411,15 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         final Map<ColumnMeta, Object> filtered = new HashMap<>(data.size());
         if (!this.discriminators.isEmpty()) {
             DiscriminatorMeta discriminator = null;
-            for (final Map.Entry<Class<?>, DiscriminatorMeta> entry : this.discriminators.entrySet()) {
-                if (entry.getKey().isInstance(instance)) {
-                    discriminator = entry.getValue();
-                    break;
+            final Compiled frozen = this.compiled;
+            if (frozen != null) {
+                discriminator = null == instance ? null : frozen.getDiscriminator(instance.getClass());
+            } else {
+                for (final Map.Entry<Class<?>, DiscriminatorMeta> entry : this.discriminators.entrySet()) {
+                    if (entry.getKey().isInstance(instance)) {
+                        discriminator = entry.getValue();
+                        break;
+                    }
                 }
             }
             if (null == discriminator) {
@@ -296,7 +462,15 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
             return null;
         }
 
-        return clazz.newInstance();
+        final Compiled frozen = this.compiled;
+        if (null == frozen) {
+            return Instantiators.newInstance(clazz);
+        }
+        final Instantiator<?> existing = frozen.instantiators.get(clazz);
+        if (existing != null) {
+            return existing.newInstance();
+        }
+        return frozen.instantiators.computeIfAbsent(clazz, Instantiators::get).newInstance();
     }
 
     public Class getType(final Map<ColumnMeta, Object> data) {
@@ -304,6 +478,21 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
             return null;
         }
 
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            if (frozen.singleType != null) {
+                return frozen.singleType;
+            }
+            for (final Map.Entry<ColumnMeta, Map<Object, Class<?>>> entry : frozen.typesByDiscriminator.entrySet()) {
+                final Object dataValue = data.get(entry.getKey());
+                final Class<?> type = null == dataValue ? null : entry.getValue().get(dataValue);
+                if (type != null) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
         if (this.types.isEmpty()) {
             return null;
         }
@@ -326,10 +515,18 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     public Set<Class<?>> getTypes() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.types;
+        }
         return Collections.unmodifiableSet(this.types);
     }
 
     public Collection<ColumnMeta> getLazyLoaded() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.lazyLoaded;
+        }
         final List<ColumnMeta> list = new ArrayList<>();
         for (final ColumnMeta column : this.getColumns()) {
             if (column.isLazyLoaded()) {
@@ -340,6 +537,10 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     public Collection<ColumnMeta> getEagerLoaded() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.eagerLoaded;
+        }
         final List<ColumnMeta> list = new ArrayList<>();
         for (final ColumnMeta column : this.getColumns()) {
             if (!column.isLazyLoaded()) {
@@ -350,6 +551,10 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     public ColumnMeta getPrimaryKey() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.primaryKey;
+        }
         for (final ColumnMeta column : this.getColumns()) {
             if (column.isPrimaryKey()) {
                 return column;
@@ -359,6 +564,10 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     public Set<ColumnMeta> getPrimaryKeys() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.primaryKeys;
+        }
         final Set<ColumnMeta> keys = new ArraySet<>(4);
         for (final ColumnMeta column : this.getColumns()) {
             if (column.isPrimaryKey()) {
@@ -372,10 +581,18 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         if (null == column) {
             return false;
         }
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.ordinals.containsKey(column);
+        }
         return this.columns.contains(column);
     }
 
     public Collection<ColumnMeta> getColumns() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.columns;
+        }
         return Collections.unmodifiableCollection(this.columns);
     }
 
@@ -391,6 +608,10 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         if (null == nameOrProperty || nameOrProperty.isEmpty()) {
             return null;
         }
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.columnsByName.get(nameOrProperty.toLowerCase(Locale.ROOT));
+        }
         for (final ColumnMeta meta : this.columns) {
             if (nameOrProperty.equalsIgnoreCase(meta.getName())) {
                 return meta;
@@ -402,7 +623,30 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         return null;
     }
 
+    /**
+     * @return Returns the position of a column within {@link #getColumns()}, or -1 if not found.
+     */
+    public int getOrdinal(final ColumnMeta column) {
+        if (null == column) {
+            return -1;
+        }
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            final Integer ordinal = frozen.ordinals.get(column);
+            return null == ordinal ? -1 : ordinal;
+        }
+        int i = 0;
+        for (final ColumnMeta existing : this.columns) {
+            if (existing.equals(column)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
     boolean addColumn(final ColumnMeta column) {
+        this.ensureMutable();
         if (null == column) {
             return false;
         }
@@ -410,6 +654,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     boolean removeColumn(final ColumnMeta column) {
+        this.ensureMutable();
         if (null == column) {
             return false;
         }
@@ -418,10 +663,15 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
 
     @Override
     public Iterator<ColumnMeta> iterator() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.columns.iterator();
+        }
         return Collections.unmodifiableCollection(this.columns).iterator();
     }
 
     boolean addIndexed(final IndexMeta column) {
+        this.ensureMutable();
         if (null == column) {
             return false;
         }
@@ -429,6 +679,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     boolean removeIndexed(final IndexMeta column) {
+        this.ensureMutable();
         if (null == column) {
             return false;
         }
@@ -439,7 +690,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         if (null == column) {
             return false;
         }
-        for (final IndexMeta index : this.indexed) {
+        for (final IndexMeta index : this.getIndexed()) {
             if (index.getColumns().contains(column)) {
                 return true;
             }
@@ -448,22 +699,36 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     boolean addQuery(final QueryMeta q) {
+        this.ensureMutable();
         return this.queries.add(q);
     }
 
     boolean removeQuery(final QueryMeta q) {
-        return this.queries.add(q);
+        this.ensureMutable();
+        return this.queries.remove(q);
     }
 
     public Collection<QueryMeta> getQueries() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.queries;
+        }
         return Collections.unmodifiableCollection(this.queries);
     }
 
     public List<IndexMeta> getIndexed() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.indexed;
+        }
         return Collections.unmodifiableList(this.indexed);
     }
 
     public Iterable<Map.Entry<ColumnMeta, ColumnAccessor>> getAccessors() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.accessorMap.entrySet();
+        }
         return Collections.unmodifiableMap(this.accessors).entrySet();
     }
 
@@ -478,6 +743,11 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         if (null == columnName || columnName.isEmpty()) {
             return null;
         }
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            final ColumnMeta column = frozen.columnsByName.get(columnName.toLowerCase(Locale.ROOT));
+            return null == column ? null : frozen.accessors[frozen.ordinals.get(column)];
+        }
         for (final Map.Entry<ColumnMeta, ColumnAccessor> entry : this.accessors.entrySet()) {
             final ColumnMeta column = entry.getKey();
             if (columnName.equalsIgnoreCase(column.getName()) || columnName.equalsIgnoreCase(column.getProperty())) {
@@ -487,7 +757,48 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
         return null;
     }
 
+    /**
+     * @return Returns the generated accessor for all plain field columns of the given concrete type, or null if this
+     * entity is not frozen or no accessor is available.
+     */
+    public BulkAccessor getBulkAccessor(final Class<?> type) {
+        final Compiled frozen = this.compiled;
+        if (null == frozen || null == type) {
+            return null;
+        }
+        final Optional<BulkAccessor> existing = frozen.bulkAccessors.get(type);
+        if (existing != null) {
+            return existing.orElse(null);
+        }
+        return frozen.bulkAccessors.computeIfAbsent(type, (x) -> {
+            try {
+                return Optional.ofNullable(BulkAccessorGenerator.generate(this, x));
+            } catch (final Exception | LinkageError e) {
+                logger.warn("Unable to generate bulk accessor for [" + x + "] of entity [" + this.name + "], using column accessors.", e);
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * @return Returns the accessor for the column at an ordinal of {@link #getColumns()}.
+     */
+    public ColumnAccessor getAccessor(final int ordinal) {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return ordinal >= 0 && ordinal < frozen.accessors.length ? frozen.accessors[ordinal] : null;
+        }
+        int i = 0;
+        for (final ColumnMeta column : this.columns) {
+            if (i++ == ordinal) {
+                return this.accessors.get(column);
+            }
+        }
+        return null;
+    }
+
     void setDiscriminator(Class<?> clazz, DiscriminatorMeta discriminator) {
+        this.ensureMutable();
         if (null == clazz) {
             return;
         }
@@ -517,6 +828,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     boolean setAccessor(final ColumnMeta column, final ColumnAccessor accessor) {
+        this.ensureMutable();
         if (null == column) {
             return false;
         }
@@ -529,6 +841,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     boolean putColumns(final Map<ColumnMeta, ColumnAccessor> map) {
+        this.ensureMutable();
         if (null == map || map.isEmpty()) {
             return false;
         }
@@ -547,6 +860,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     void setId(final IdAccessor id) {
+        this.ensureMutable();
         if (null == id) {
             throw new IllegalArgumentException();
         }
@@ -566,6 +880,7 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
     }
 
     void setTable(final String table) {
+        this.ensureMutable();
         this.table = table;
     }
 
@@ -594,6 +909,10 @@ public class EntityMeta implements Iterable<ColumnMeta>, Comparable<EntityMeta>
 
     @Override
     public int hashCode() {
+        final Compiled frozen = this.compiled;
+        if (frozen != null) {
+            return frozen.hashCode;
+        }
         return Objects.hash(name, types, table);
     }
 }
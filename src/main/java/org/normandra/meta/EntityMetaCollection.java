@@ -202,6 +202,8 @@ package org.normandra.meta;
 import org.normandra.util.ArraySet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * a set of entity meta instances
@@ -209,6 +211,19 @@ import java.util.*;
 public class EntityMetaCollection implements EntityMetaLookup, Iterable<EntityMeta> {
     private final Map<Class, EntityMeta> classMap = new HashMap<>();
 
+    private final Map<String, EntityMeta> names = new HashMap<>();
+
+    private final Map<String, EntityMeta> tables = new HashMap<>();
+
+    private final Map<String, EntityMeta> simpleNames = new HashMap<>();
+
+    private final Set<EntityMeta> entities = new TreeSet<>();
+
+    /**
+     * resolved sub/super class lookups, including empty (negative) results
+     */
+    private final ConcurrentMap<Class<?>, Collection<EntityMeta>> resolved = new ConcurrentHashMap<>();
+
     public EntityMetaCollection(final Iterable<EntityMeta> metas) {
         if (null == metas) {
             throw new IllegalArgumentException();
@@ -218,6 +233,20 @@ public class EntityMetaCollection implements EntityMetaLookup, Iterable<EntityMe
                 this.classMap.put(clazz, entity);
             }
         }
+        for (final EntityMeta entity : this.classMap.values()) {
+            this.entities.add(entity);
+            putLabel(this.names, entity.getName(), entity);
+            putLabel(this.tables, entity.getTable(), entity);
+            for (final Class<?> clazz : entity.getTypes()) {
+                putLabel(this.simpleNames, clazz.getSimpleName(), entity);
+            }
+        }
+    }
+
+    private static void putLabel(final Map<String, EntityMeta> map, final String label, final EntityMeta entity) {
+        if (label != null && !label.isEmpty()) {
+            map.putIfAbsent(label.toLowerCase(Locale.ROOT), entity);
+        }
     }
 
     public Set<Class> getTypes() {
@@ -253,21 +282,17 @@ public class EntityMetaCollection implements EntityMetaLookup, Iterable<EntityMe
             return null;
         }
 
-        for (final EntityMeta meta : this.classMap.values()) {
-            if (labelOrType.equalsIgnoreCase(meta.getName())) {
-                return meta;
-            } else if (labelOrType.equalsIgnoreCase(meta.getTable())) {
-                return meta;
-            } else {
-                for (final Class<?> clazz : meta.getTypes()) {
-                    if (labelOrType.equalsIgnoreCase(clazz.getSimpleName())) {
-                        return meta;
-                    }
-                }
-            }
+        // entity names take precedence over tables, then simple class names
+        final String label = labelOrType.toLowerCase(Locale.ROOT);
+        final EntityMeta named = this.names.get(label);
+        if (named != null) {
+            return named;
         }
-
-        return null;
+        final EntityMeta table = this.tables.get(label);
+        if (table != null) {
+            return table;
+        }
+        return this.simpleNames.get(label);
     }
 
     private Collection<EntityMeta> findMeta(final Class<?> clazz) {
@@ -280,6 +305,10 @@ public class EntityMetaCollection implements EntityMetaLookup, Iterable<EntityMe
             return Collections.singletonList(existing);
         }
 
+        return this.resolved.computeIfAbsent(clazz, this::resolve);
+    }
+
+    private Collection<EntityMeta> resolve(final Class<?> clazz) {
         final Set<EntityMeta> list = new ArraySet<>(4);
         for (final Map.Entry<Class, EntityMeta> entry : this.classMap.entrySet()) {
             final Class<?> entityClass = entry.getKey();
@@ -312,13 +341,7 @@ public class EntityMetaCollection implements EntityMetaLookup, Iterable<EntityMe
             return false;
         }
 
-        for (final Map.Entry<Class, EntityMeta> entry : this.classMap.entrySet()) {
-            if (meta == entry.getValue() || meta.compareTo(entry.getValue()) == 0) {
-                return true;
-            }
-        }
-
-        return false;
+        return this.entities.contains(meta);
     }
 
     @Override
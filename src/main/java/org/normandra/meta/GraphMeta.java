@@ -215,11 +215,19 @@ public class GraphMeta extends DatabaseMeta {
 
     private final Map<EntityMeta, PropertyFilter> propertyFilters = new TreeMap<>();
 
+    private final Collection<EntityMeta> entities;
+
     public GraphMeta(final Collection<EntityMeta> vertices, final Collection<EntityMeta> edges, final Collection<EntityMeta> entities) {
         super(merge(Arrays.asList(vertices, edges, entities)));
         this.nodeEntities = new EntityMetaCollection(vertices);
         this.edgeEntities = new EntityMetaCollection(edges);
         this.genericEntities = new EntityMetaCollection(entities);
+
+        final Collection<EntityMeta> items = new ArraySet<>(this.edgeEntities.size() + this.nodeEntities.size() + this.genericEntities.size());
+        items.addAll(this.nodeEntities.list());
+        items.addAll(this.edgeEntities.list());
+        items.addAll(this.genericEntities.list());
+        this.entities = Collections.unmodifiableCollection(items);
     }
 
     public Collection<EntityMeta> getNodeEntities() {
@@ -309,11 +317,7 @@ public class GraphMeta extends DatabaseMeta {
     }
 
     public Collection<EntityMeta> list() {
-        final Collection<EntityMeta> items = new ArraySet<>(this.edgeEntities.size() + this.nodeEntities.size() + this.genericEntities.size());
-        items.addAll(this.nodeEntities.list());
-        items.addAll(this.edgeEntities.list());
-        items.addAll(this.genericEntities.list());
-        return Collections.unmodifiableCollection(items);
+        return this.entities;
     }
 
     @Override
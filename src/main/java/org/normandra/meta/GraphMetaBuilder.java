@@ -6,6 +6,7 @@ import org.normandra.property.EmptyPropertyFilter;
 import org.normandra.property.PropertyFilter;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class GraphMetaBuilder {
     private final Set<Class> nodeClasses = new HashSet<>();
@@ -20,6 +21,53 @@ public class GraphMetaBuilder {
 
     private ColumnAccessorFactory columnAccessorFactory = new BasicColumnAccessorFactory();
 
+    private Map<Class<?>, ClassDescriptor> descriptors = null;
+
+    private ForkJoinPool pool = null;
+
+    /**
+     * read independent entity hierarchies in parallel on the common fork-join pool
+     */
+    public GraphMetaBuilder withParallelParsing() {
+        return this.withParallelParsing(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * read independent entity hierarchies in parallel on the given pool, or sequentially if null
+     */
+    public GraphMetaBuilder withParallelParsing(final ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * use generated class descriptors in place of reflective scanning, by default all registries on the class path
+     */
+    public GraphMetaBuilder withDescriptors(final DescriptorRegistry... registries) {
+        final Map<Class<?>, ClassDescriptor> map = new HashMap<>();
+        if (registries != null) {
+            for (final DescriptorRegistry registry : registries) {
+                for (final ClassDescriptor descriptor : registry.getDescriptors()) {
+                    map.put(descriptor.getType(), descriptor);
+                }
+            }
+        }
+        this.descriptors = map;
+        return this;
+    }
+
+    GraphMetaBuilder withDescriptorMap(final Map<Class<?>, ClassDescriptor> map) {
+        this.descriptors = map;
+        return this;
+    }
+
+    private Map<Class<?>, ClassDescriptor> descriptors() {
+        if (null == this.descriptors) {
+            this.descriptors = DescriptorRegistry.loadAll();
+        }
+        return this.descriptors;
+    }
+
     public GraphMetaBuilder withColumnFactory(final ColumnAccessorFactory factory) {
         this.columnAccessorFactory = factory;
         return this;
@@ -148,7 +196,9 @@ public class GraphMetaBuilder {
         allClasses.addAll(nodeClasses);
         allClasses.addAll(edgeClasses);
         allClasses.addAll(entityClasses);
-        final AnnotationParser parser = new AnnotationParser(columnAccessorFactory, allClasses);
+        final AnnotationParser parser = new AnnotationParser(columnAccessorFactory, allClasses)
+                .withDescriptors(this.descriptors())
+                .withPool(this.pool);
         final Set<EntityMeta> allMetas = parser.read();
 
         // setup database
@@ -208,13 +208,30 @@ public class IndexMeta {
 
     private final String name;
 
+    private final boolean cacheable;
+
+    private final String query;
+
     public IndexMeta(final String name, final Collection<ColumnMeta> columns, final boolean unique) {
+        this(name, columns, unique, false, null);
+    }
+
+    /**
+     * @param cacheable true if entity caches should keep an in-memory lookup for this index
+     * @param query     the named query used to look up entities by this index, or null
+     */
+    public IndexMeta(final String name, final Collection<ColumnMeta> columns, final boolean unique, final boolean cacheable, final String query) {
         if (null == name || name.isEmpty()) {
             throw new IllegalArgumentException("Name cannot be null or empty.");
         }
+        if (cacheable && !unique) {
+            throw new IllegalArgumentException("Index [" + name + "] must be unique to be cacheable.");
+        }
         this.name = name;
         this.columns = new ArrayList<>(columns);
         this.unique = unique;
+        this.cacheable = cacheable;
+        this.query = null == query || query.isEmpty() ? null : query;
     }
 
     public List<ColumnMeta> getColumns() {
@@ -225,6 +242,20 @@ public class IndexMeta {
         return this.unique;
     }
 
+    /**
+     * @return Returns true if entity caches may answer lookups by this index, as opted in with a cached index annotation.
+     */
+    public boolean isCacheable() {
+        return this.cacheable;
+    }
+
+    /**
+     * @return Returns the name of the query used to look up entities by this index, or null if none was declared.
+     */
+    public String getQuery() {
+        return this.query;
+    }
+
     public String getName() {
         return this.name;
     }
@@ -234,11 +265,11 @@ public class IndexMeta {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IndexMeta indexMeta = (IndexMeta) o;
-        return unique == indexMeta.unique && Objects.equals(columns, indexMeta.columns) && Objects.equals(name, indexMeta.name);
+        return unique == indexMeta.unique && cacheable == indexMeta.cacheable && Objects.equals(columns, indexMeta.columns) && Objects.equals(name, indexMeta.name) && Objects.equals(query, indexMeta.query);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(columns, unique, name);
+        return Objects.hash(columns, unique, cacheable, name, query);
     }
 }
@@ -231,6 +231,16 @@ public class CompositeClassLoader extends ClassLoader {
         throw new ClassNotFoundException("Unable to load class [" + name + "].");
     }
 
+    /**
+     * define a generated class, which resolves its references through this loader
+     */
+    public Class<?> define(final String name, final byte[] bytes) {
+        if (null == name || null == bytes) {
+            throw new IllegalArgumentException();
+        }
+        return this.defineClass(name, bytes, 0, bytes.length);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
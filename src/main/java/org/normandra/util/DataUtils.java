@@ -205,6 +205,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -290,6 +291,25 @@ public class DataUtils {
         return bytesToUUID(data);
     }
 
+    /**
+     * @return Returns a key in a canonical form for matching, so integral numbers of any width (and text of any kind) compare equal.
+     */
+    public static Object normalizeKey(final Object key) {
+        if (key instanceof Byte || key instanceof Short || key instanceof Integer || key instanceof Long) {
+            return ((Number) key).longValue();
+        }
+        if (key instanceof Float || key instanceof Double) {
+            return ((Number) key).doubleValue();
+        }
+        if (key instanceof BigInteger && ((BigInteger) key).bitLength() < 64) {
+            return ((BigInteger) key).longValue();
+        }
+        if (key instanceof CharSequence && !(key instanceof String)) {
+            return key.toString();
+        }
+        return key;
+    }
+
     public static Date longToDate(final Long value) {
         if (null == value) {
             return null;
@@ -196,6 +196,7 @@ package org.normandra.util;
 
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
+import org.normandra.data.BulkAccessor;
 import org.normandra.data.ColumnAccessor;
 import org.normandra.data.DataHolder;
 import org.normandra.data.DataHolderFactory;
@@ -215,9 +216,16 @@ public class EntityBuilder {
 
     private final DataHolderFactory factory;
 
+    private final DirtyTracker tracker;
+
     public EntityBuilder(final EntitySession session, final DataHolderFactory factory) {
+        this(session, factory, null);
+    }
+
+    public EntityBuilder(final EntitySession session, final DataHolderFactory factory, final DirtyTracker tracker) {
         this.session = session;
         this.factory = factory;
+        this.tracker = tracker;
     }
 
     public Object build(final EntityMeta meta, final Map<ColumnMeta, Object> data) throws NormandraException {
@@ -260,6 +268,11 @@ public class EntityBuilder {
                 }
             }
         }
+
+        // remember hydrated values for dirty checks on save
+        if (this.tracker != null && key != null) {
+            this.tracker.snapshot(meta, key, EntityPersistence.map(meta, instance, this.session));
+        }
         return instance;
     }
 
@@ -267,6 +280,12 @@ public class EntityBuilder {
         if (null == data || data.isEmpty()) {
             return false;
         }
+
+        // collect plain field columns to write in one call where available
+        final BulkAccessor bulk = null == instance ? null : meta.getBulkAccessor(instance.getClass());
+        final Object[] values = bulk != null ? new Object[bulk.size()] : null;
+        final DataHolder[] holders = bulk != null ? new DataHolder[bulk.size()] : null;
+
         boolean updated = false;
         for (final Map.Entry<ColumnMeta, Object> entry : data.entrySet()) {
             final ColumnMeta column = entry.getKey();
@@ -275,11 +294,27 @@ public class EntityBuilder {
             if (value != null && accessor != null) {
                 final DataHolder placeholder = this.factory.createStatic(value);
                 if (placeholder != null) {
-                    accessor.setValue(instance, placeholder, this.session);
+                    final int slot = bulk != null ? bulk.getSlot(meta.getOrdinal(column)) : -1;
+                    final Object holderValue = slot >= 0 && !placeholder.isEmpty() ? placeholder.get() : null;
+                    if (holderValue != null) {
+                        holders[slot] = placeholder;
+                        values[slot] = holderValue;
+                    } else {
+                        accessor.setValue(instance, placeholder, this.session);
+                    }
                     updated = true;
                 }
             }
         }
+
+        if (bulk != null && !bulk.setValues(instance, values)) {
+            // a value needs conversion, write through column accessors instead
+            for (int i = 0; i < holders.length; i++) {
+                if (holders[i] != null) {
+                    meta.getAccessor(bulk.getColumns().get(i)).setValue(instance, holders[i], this.session);
+                }
+            }
+        }
         return updated;
     }
 }
\ No newline at end of file
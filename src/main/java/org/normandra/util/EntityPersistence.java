@@ -194,9 +194,11 @@
 
 package org.normandra.util;
 
+import org.normandra.DatabaseSession;
 import org.normandra.EntitySession;
 import org.normandra.NormandraException;
 import org.normandra.data.BasicDataHolder;
+import org.normandra.data.BulkAccessor;
 import org.normandra.data.ColumnAccessor;
 import org.normandra.data.DataHandler;
 import org.normandra.data.DataHolder;
@@ -216,11 +218,18 @@ import java.util.Map;
 public class EntityPersistence {
     private final EntitySession session;
 
+    private final DirtyTracker tracker;
+
     public EntityPersistence(final EntitySession session) {
+        this(session, null);
+    }
+
+    public EntityPersistence(final EntitySession session, final DirtyTracker tracker) {
         if (null == session) {
             throw new IllegalArgumentException();
         }
         this.session = session;
+        this.tracker = tracker;
     }
 
     public void save(final EntityMeta entity, final Object instance, final DataHandler handler) throws NormandraException {
@@ -236,17 +245,49 @@ public class EntityPersistence {
         }
 
         // handle data for each entity
-        final Map<ColumnMeta, Object> data = this.map(entity, instance);
-        final Map<ColumnMeta, Object> filtered = entity.filter(data, instance);
+        final Map<ColumnMeta, Object> data = map(entity, instance, this.session);
+        Map<ColumnMeta, Object> changed = data;
+        final Object key = this.tracker != null ? entity.getId().fromEntity(instance) : null;
+        if (key != null) {
+            final Map<ColumnMeta, Object> diff = this.tracker.diff(entity, key, data);
+            if (diff != null && diff.isEmpty()) {
+                // nothing changed since last read or save
+                return;
+            }
+            if (diff != null) {
+                changed = diff;
+            }
+        }
+        final Map<ColumnMeta, Object> filtered = entity.filter(changed, instance);
         if (!handler.save(entity, filtered)) {
             throw new NormandraException("Unable to save instance, unknown error.");
         }
+        if (this.session instanceof DatabaseSession) {
+            // key now exists, drop any negative lookup
+            ((DatabaseSession) this.session).getCache().clearAbsent(entity, entity.getId().fromEntity(instance));
+        }
+        if (key != null) {
+            this.tracker.saved(entity, key, data);
+        }
     }
 
-    private Map<ColumnMeta, Object> map(final EntityMeta entity, final Object instance) throws NormandraException {
+    /**
+     * @return Returns the loaded, non-null column values of an entity instance.
+     */
+    public static Map<ColumnMeta, Object> map(final EntityMeta entity, final Object instance, final EntitySession session) throws NormandraException {
+        // read plain field columns in one call where available
+        final BulkAccessor bulk = null == instance ? null : entity.getBulkAccessor(instance.getClass());
+        final Object[] values = bulk != null ? bulk.getValues(instance) : null;
+
         final Map<ColumnMeta, Object> data = new LinkedHashMap<>();
+        int ordinal = 0;
         for (final ColumnMeta column : entity) {
-            if (!(column instanceof MappedColumnMeta)) {
+            final int slot = bulk != null ? bulk.getSlot(ordinal++) : -1;
+            if (slot >= 0) {
+                if (values[slot] != null) {
+                    data.put(column, values[slot]);
+                }
+            } else if (!(column instanceof MappedColumnMeta)) {
                 final ColumnAccessor accessor = entity.getAccessor(column);
                 if (accessor != null && accessor.isLoaded(instance)) {
                     final Object value = accessor.getValue(instance, session);
@@ -0,0 +1,482 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra;
+
+import org.normandra.cache.CachedDatabaseQuery;
+import org.normandra.cache.CachedPropertyQuery;
+import org.normandra.cache.ConcurrentMemoryCache;
+import org.normandra.cache.EntityCache;
+import org.normandra.cache.NegativeLookupCache;
+import org.normandra.data.BasicDataHolder;
+import org.normandra.data.DataHolder;
+import org.normandra.data.DataHolderFactory;
+import org.normandra.meta.ColumnMeta;
+import org.normandra.meta.EntityMeta;
+import org.normandra.meta.MappedColumnMeta;
+import org.normandra.util.DataUtils;
+import org.normandra.util.DirtyTracker;
+import org.normandra.util.EntityBuilder;
+import org.normandra.util.EntityPersistence;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a simple in-memory database session, recording store reads
+ * <p>
+ * Writes made within a unit of work are only visible to other sessions sharing the same store once committed.  Queries
+ * ignore their text and match entities whose columns equal the parameters - property queries name the table to list.
+ */
+public class MapDatabaseSession implements DatabaseSession {
+    private final Map<EntityMeta, Map<Object, Object>> store;
+
+    private final Map<EntityMeta, Map<Object, Object>> uncommitted = new HashMap<>();
+
+    private final EntityCache cache = new NegativeLookupCache(new ConcurrentMemoryCache(), 1, TimeUnit.MINUTES);
+
+    private final List<List<Object>> batches = new ArrayList<>();
+
+    private final List<ColumnMeta> lazyLoads = new ArrayList<>();
+
+    private final List<String> queries = new ArrayList<>();
+
+    private final List<Map<ColumnMeta, Object>> writes = new ArrayList<>();
+
+    private DirtyTracker tracker = null;
+
+    private final DataHolderFactory holders = new DataHolderFactory() {
+        @Override
+        public DataHolder createStatic(final Object value) {
+            return new BasicDataHolder(value);
+        }
+
+        @Override
+        public DataHolder createLazy(final EntityMeta meta, final ColumnMeta column, final Object key) {
+            return () -> {
+                lazyLoads.add(column);
+                final Object stored = find(meta, key);
+                return null == stored ? null : meta.getAccessor(column).getValue(stored, MapDatabaseSession.this);
+            };
+        }
+
+        @Override
+        public DataHolder createMappedColumn(final EntityMeta meta, final MappedColumnMeta column, final Object key) {
+            return null;
+        }
+    };
+
+    private boolean work = false;
+
+    public MapDatabaseSession() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param store the committed entities, which may be shared by several sessions
+     */
+    public MapDatabaseSession(final Map<EntityMeta, Map<Object, Object>> store) {
+        this.store = store;
+    }
+
+    public Map<EntityMeta, Map<Object, Object>> getStore() {
+        return this.store;
+    }
+
+    public List<List<Object>> getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * @return Returns the columns fetched separately while hydrating entities.
+     */
+    public List<ColumnMeta> getLazyLoads() {
+        return this.lazyLoads;
+    }
+
+    /**
+     * @return Returns the queries run against the store.
+     */
+    public List<String> getQueries() {
+        return this.queries;
+    }
+
+    /**
+     * @return Returns the columns written by each save, when diffing saves against a tracker.
+     */
+    public List<Map<ColumnMeta, Object>> getWrites() {
+        return this.writes;
+    }
+
+    public MapDatabaseSession withTracker(final DirtyTracker tracker) {
+        this.tracker = tracker;
+        return this;
+    }
+
+    @Override
+    public DirtyTracker getTracker() {
+        return this.tracker;
+    }
+
+    @Override
+    public void clear() {
+        this.cache.clear();
+    }
+
+    @Override
+    public EntityCache getCache() {
+        return this.cache;
+    }
+
+    @Override
+    public void save(final EntityMeta meta, final Object element) throws NormandraException {
+        if (this.tracker != null) {
+            new EntityPersistence(this, this.tracker).save(meta, element, (entity, data) -> this.writes.add(data));
+        }
+        this.write(meta, meta.getId().fromEntity(element), element);
+    }
+
+    @Override
+    public void delete(final EntityMeta meta, final Object element) {
+        this.write(meta, meta.getId().fromEntity(element), null);
+    }
+
+    private void write(final EntityMeta meta, final Object key, final Object element) {
+        if (this.work) {
+            this.uncommitted.computeIfAbsent(meta, m -> new HashMap<>()).put(key, element);
+        } else if (element != null) {
+            this.store.computeIfAbsent(meta, m -> new ConcurrentHashMap<>()).put(key, element);
+        } else {
+            this.store.getOrDefault(meta, Collections.emptyMap()).remove(key);
+        }
+    }
+
+    private Object find(final EntityMeta meta, final Object key) {
+        final Map<Object, Object> pending = this.uncommitted.get(meta);
+        if (pending != null && pending.containsKey(key)) {
+            return pending.get(key);
+        }
+        // convert the key to the stored type, as a backend would
+        final Map<Object, Object> committed = this.store.getOrDefault(meta, Collections.emptyMap());
+        final Object stored = committed.get(key);
+        return stored != null ? stored : committed.get(DataUtils.normalizeKey(key));
+    }
+
+    @Override
+    public boolean exists(final EntityMeta meta, final Object key) {
+        return this.get(meta, key) != null;
+    }
+
+    @Override
+    public Object get(final EntityMeta meta, final Object key) {
+        this.batches.add(Collections.singletonList(key));
+        return this.find(meta, key);
+    }
+
+    @Override
+    public List<Object> get(final EntityMeta meta, final Object... keys) {
+        this.batches.add(Arrays.asList(keys));
+        final List<Object> list = new ArrayList<>();
+        for (final Object key : keys) {
+            final Object item = this.find(meta, key);
+            if (item != null) {
+                list.add(item);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public Object load(final EntityMeta meta, final Map<ColumnMeta, Object> data) throws NormandraException {
+        final Object entity = new EntityBuilder(this, this.holders, this.tracker).build(meta, data);
+        if (entity != null) {
+            this.cache.put(meta, meta.getId().fromEntity(entity), entity);
+        }
+        return entity;
+    }
+
+    @Override
+    public Object scalarQuery(final String query) {
+        return null;
+    }
+
+    @Override
+    public DatabaseQuery query(final EntityMeta meta, final String query, final Map<String, Object> parameters) throws NormandraException {
+        this.queries.add(query);
+        return new CachedDatabaseQuery<>(this.match(meta, parameters));
+    }
+
+    @Override
+    public PropertyQuery query(final String query, final Map<String, Object> parameters) throws NormandraException {
+        this.queries.add(query);
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        for (final EntityMeta meta : new ArrayList<>(this.store.keySet())) {
+            if (meta.getTable().equalsIgnoreCase(query)) {
+                for (final Object entity : this.match(meta, parameters)) {
+                    final Map<String, Object> row = new LinkedHashMap<>();
+                    for (final ColumnMeta column : meta) {
+                        row.put(column.getName(), meta.getAccessor(column).getValue(entity, this));
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return new CachedPropertyQuery(rows);
+    }
+
+    private List<Object> match(final EntityMeta meta, final Map<String, Object> parameters) throws NormandraException {
+        final Map<Object, Object> entities = new LinkedHashMap<>(this.store.getOrDefault(meta, Collections.emptyMap()));
+        entities.putAll(this.uncommitted.getOrDefault(meta, Collections.emptyMap()));
+        final List<Object> list = new ArrayList<>();
+        for (final Object entity : entities.values()) {
+            boolean matches = entity != null;
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                final ColumnMeta column = meta.findColumn(parameter.getKey());
+                matches = matches && Objects.equals(parameter.getValue(), meta.getAccessor(column).getValue(entity, this));
+            }
+            if (matches) {
+                list.add(entity);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void withTransaction(final TransactionRunnable worker, final ExceptionHandler handler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T withTransaction(final TransactionCallable<T> worker, final ExceptionHandler handler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Transaction beginTransaction() throws NormandraException {
+        return new Transaction(this);
+    }
+
+    @Override
+    public void beginWork() {
+        this.work = true;
+    }
+
+    @Override
+    public void commitWork() {
+        this.work = false;
+        for (final Map.Entry<EntityMeta, Map<Object, Object>> entry : this.uncommitted.entrySet()) {
+            for (final Map.Entry<Object, Object> item : entry.getValue().entrySet()) {
+                this.write(entry.getKey(), item.getKey(), item.getValue());
+            }
+        }
+        this.uncommitted.clear();
+    }
+
+    @Override
+    public void rollbackWork() {
+        this.work = false;
+        this.uncommitted.clear();
+    }
+
+    @Override
+    public void concludeWork() {
+        this.rollbackWork();
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ * TERMS AND CONDITIONS FOR USE, REPRODUCTION, AND DISTRIBUTION
+ *
+ * 1. Definitions.
+ *
+ * "License" shall mean the terms and conditions for use, reproduction, and
+ * distribution as defined by Sections 1 through 9 of this document.
+ *
+ * "Licensor" shall mean the copyright owner or entity authorized by the copyright
+ * owner that is granting the License.
+ *
+ * "Legal Entity" shall mean the union of the acting entity and all other entities
+ * that control, are controlled by, or are under common control with that entity.
+ * For the purposes of this definition, "control" means (i) the power, direct or
+ * indirect, to cause the direction or management of such entity, whether by
+ * contract or otherwise, or (ii) ownership of fifty percent (50%) or more of the
+ * outstanding shares, or (iii) beneficial ownership of such entity.
+ *
+ * "You" (or "Your") shall mean an individual or Legal Entity exercising
+ * permissions granted by this License.
+ *
+ * "Source" form shall mean the preferred form for making modifications, including
+ * but not limited to software tagSource code, documentation tagSource, and configuration
+ * files.
+ *
+ * "Object" form shall mean any form resulting from mechanical transformation or
+ * translation of a Source form, including but not limited to compiled object code,
+ * generated documentation, and conversions to other media types.
+ *
+ * "Work" shall mean the work of authorship, whether in Source or Object form, made
+ * available under the License, as indicated by a copyright notice that is included
+ * in or attached to the work (an example is provided in the Appendix below).
+ *
+ * "Derivative Works" shall mean any work, whether in Source or Object form, that
+ * is based on (or derived from) the Work and for which the editorial revisions,
+ * annotations, elaborations, or other modifications represent, as a whole, an
+ * original work of authorship. For the purposes of this License, Derivative Works
+ * shall not include works that remain separable from, or merely link (or bind by
+ * name) to the interfaces of, the Work and Derivative Works thereof.
+ *
+ * "Contribution" shall mean any work of authorship, including the original version
+ * of the Work and any modifications or additions to that Work or Derivative Works
+ * thereof, that is intentionally submitted to Licensor for inclusion in the Work
+ * by the copyright owner or by an individual or Legal Entity authorized to submit
+ * on behalf of the copyright owner. For the purposes of this definition,
+ * "submitted" means any form of electronic, verbal, or written communication sent
+ * to the Licensor or its representatives, including but not limited to
+ * communication on electronic mailing lists, tagSource code control systems, and
+ * issue tracking systems that are managed by, or on behalf of, the Licensor for
+ * the purpose of discussing and improving the Work, but excluding communication
+ * that is conspicuously marked or otherwise designated in writing by the copyright
+ * owner as "Not a Contribution."
+ *
+ * "Contributor" shall mean Licensor and any individual or Legal Entity on behalf
+ * of whom a Contribution has been received by Licensor and subsequently
+ * incorporated within the Work.
+ *
+ * 2. Grant of Copyright License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable copyright license to reproduce, prepare Derivative Works of,
+ * publicly display, publicly perform, sublicense, and distribute the Work and such
+ * Derivative Works in Source or Object form.
+ *
+ * 3. Grant of Patent License.
+ *
+ * Subject to the terms and conditions of this License, each Contributor hereby
+ * grants to You a perpetual, worldwide, non-exclusive, no-charge, royalty-free,
+ * irrevocable (except as stated in this section) patent license to make, have
+ * made, use, offer to sell, sell, import, and otherwise transfer the Work, where
+ * such license applies only to those patent claims licensable by such Contributor
+ * that are necessarily infringed by their Contribution(s) alone or by combination
+ * of their Contribution(s) with the Work to which such Contribution(s) was
+ * submitted. If You institute patent litigation against any entity (including a
+ * cross-claim or counterclaim in a lawsuit) alleging that the Work or a
+ * Contribution incorporated within the Work constitutes direct or contributory
+ * patent infringement, then any patent licenses granted to You under this License
+ * for that Work shall terminate as of the date such litigation is filed.
+ *
+ * 4. Redistribution.
+ *
+ * You may reproduce and distribute copies of the Work or Derivative Works thereof
+ * in any medium, with or without modifications, and in Source or Object form,
+ * provided that You meet the following conditions:
+ *
+ * You must give any other recipients of the Work or Derivative Works a copy of
+ * this License; and
+ * You must cause any modified files to carry prominent notices stating that You
+ * changed the files; and
+ * You must retain, in the Source form of any Derivative Works that You distribute,
+ * all copyright, patent, trademark, and attribution notices from the Source form
+ * of the Work, excluding those notices that do not pertain to any part of the
+ * Derivative Works; and
+ * If the Work includes a "NOTICE" text file as part of its distribution, then any
+ * Derivative Works that You distribute must include a readable copy of the
+ * attribution notices contained within such NOTICE file, excluding those notices
+ * that do not pertain to any part of the Derivative Works, in at least one of the
+ * following places: within a NOTICE text file distributed as part of the
+ * Derivative Works; within the Source form or documentation, if provided along
+ * with the Derivative Works; or, within a display generated by the Derivative
+ * Works, if and wherever such third-party notices normally appear. The contents of
+ * the NOTICE file are for informational purposes only and do not modify the
+ * License. You may add Your own attribution notices within Derivative Works that
+ * You distribute, alongside or as an addendum to the NOTICE text from the Work,
+ * provided that such additional attribution notices cannot be construed as
+ * modifying the License.
+ * You may add Your own copyright statement to Your modifications and may provide
+ * additional or different license terms and conditions for use, reproduction, or
+ * distribution of Your modifications, or for any such Derivative Works as a whole,
+ * provided Your use, reproduction, and distribution of the Work otherwise complies
+ * with the conditions stated in this License.
+ *
+ * 5. Submission of Contributions.
+ *
+ * Unless You explicitly state otherwise, any Contribution intentionally submitted
+ * for inclusion in the Work by You to the Licensor shall be under the terms and
+ * conditions of this License, without any additional terms or conditions.
+ * Notwithstanding the above, nothing herein shall supersede or modify the terms of
+ * any separate license agreement you may have executed with Licensor regarding
+ * such Contributions.
+ *
+ * 6. Trademarks.
+ *
+ * This License does not grant permission to use the trade names, trademarks,
+ * service marks, or product names of the Licensor, except as required for
+ * reasonable and customary use in describing the origin of the Work and
+ * reproducing the content of the NOTICE file.
+ *
+ * 7. Disclaimer of Warranty.
+ *
+ * Unless required by applicable law or agreed to in writing, Licensor provides the
+ * Work (and each Contributor provides its Contributions) on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied,
+ * including, without limitation, any warranties or conditions of TITLE,
+ * NON-INFRINGEMENT, MERCHANTABILITY, or FITNESS FOR A PARTICULAR PURPOSE. You are
+ * solely responsible for determining the appropriateness of using or
+ * redistributing the Work and assume any risks associated with Your exercise of
+ * permissions under this License.
+ *
+ * 8. Limitation of Liability.
+ *
+ * In no event and under no legal theory, whether in tort (including negligence),
+ * contract, or otherwise, unless required by applicable law (such as deliberate
+ * and grossly negligent acts) or agreed to in writing, shall any Contributor be
+ * liable to You for damages, including any direct, indirect, special, incidental,
+ * or consequential damages of any character arising as a result of this License or
+ * out of the use or inability to use the Work (including but not limited to
+ * damages for loss of goodwill, work stoppage, computer failure or malfunction, or
+ * any and all other commercial damages or losses), even if such Contributor has
+ * been advised of the possibility of such damages.
+ *
+ * 9. Accepting Warranty or Additional Liability.
+ *
+ * While redistributing the Work or Derivative Works thereof, You may choose to
+ * offer, and charge a fee for, acceptance of support, warranty, indemnity, or
+ * other liability obligations and/or rights consistent with this License. However,
+ * in accepting such obligations, You may act only on Your own behalf and on Your
+ * sole responsibility, not on behalf of any other Contributor, and only if You
+ * agree to indemnify, defend, and hold each Contributor harmless for any liability
+ * incurred by, or claims asserted against, such Contributor by reason of your
+ * accepting any such warranty or additional liability.
+ *
+ * END OF TERMS AND CONDITIONS
+ *
+ * APPENDIX: How to apply the Apache License to your work
+ *
+ * To apply the Apache License to your work, attach the following boilerplate
+ * notice, with the fields enclosed by brackets "[]" replaced with your own
+ * identifying information. (Don't include the brackets!) The text should be
+ * enclosed in the appropriate comment syntax for the file format. We also
+ * recommend that a file or class name and description of purpose be included on
+ * the same "printed page" as the copyright notice for easier identification within
+ * third-party archives.
+ *
+ *    Copyright [yyyy] [name of copyright owner]
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.normandra.association;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.normandra.EntityManager;
+import org.normandra.MapDatabaseSession;
+import org.normandra.data.BasicDataHolder;
+import org.normandra.data.FindByIdDataHolder;
+import org.normandra.entities.ClassEntity;
+import org.normandra.entities.SimpleEntity;
+import org.normandra.entities.StudentEntity;
+import org.normandra.meta.DatabaseMeta;
+import org.normandra.meta.DatabaseMetaBuilder;
+import org.normandra.meta.EntityMeta;
+
+import java.util.*;
+
+/**
+ * batch loading of lazy associations unit tests
+ */
+public class BatchLoaderTest {
+    private static class BatchSession extends MapDatabaseSession {
+        private final BatchLoader loader = new BatchLoader(this, 3);
+
+        @Override
+        public BatchLoader getBatchLoader() {
+            return this.loader;
+        }
+    }
+
+    private static class Annotated {
+        @BatchSize(size = 25)
+        private ClassEntity classroom;
+
+        private ClassEntity other;
+    }
+
+    private final DatabaseMeta database = new DatabaseMetaBuilder()
+            .withClasses(ClassEntity.class, StudentEntity.class, SimpleEntity.class)
+            .create();
+
+    private final EntityMeta meta = database.getMeta(ClassEntity.class);
+
+    private final BatchSession session = new BatchSession();
+
+    private final List<ClassEntity> classes = new ArrayList<>();
+
+    public BatchLoaderTest() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            final ClassEntity entity = new ClassEntity("class " + i, 100 + i);
+            meta.getAccessor(meta.findColumn("id")).setValue(entity, new BasicDataHolder(UUID.randomUUID()), null);
+            session.save(meta, entity);
+            classes.add(entity);
+        }
+        session.getBatches().clear();
+    }
+
+    private Object key(final int i) {
+        return classes.get(i).getId();
+    }
+
+    @Test
+    public void testManyToOne() throws Exception {
+        final ElementIdentity identity = new BasicElementIdentity(meta);
+        final List<ManyToOneAccessor> accessors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            accessors.add(new ManyToOneAccessor(meta, key(i), session, identity, 0));
+        }
+        Assert.assertEquals(5, session.getBatchLoader().getPendingCount(meta));
+
+        // first load fetches the two most recently registered siblings along
+        Assert.assertSame(classes.get(0), accessors.get(0).get());
+        Assert.assertEquals(1, session.getBatches().size());
+        Assert.assertEquals(Arrays.asList(key(0), key(4), key(3)), session.getBatches().get(0));
+        Assert.assertSame(classes.get(4), accessors.get(4).get());
+        Assert.assertSame(classes.get(3), accessors.get(3).get());
+        Assert.assertEquals(1, session.getBatches().size());
+
+        Assert.assertSame(classes.get(1), accessors.get(1).get());
+        Assert.assertEquals(Arrays.asList(key(1), key(2)), session.getBatches().get(1));
+        Assert.assertSame(classes.get(2), accessors.get(2).get());
+        Assert.assertEquals(2, session.getBatches().size());
+        Assert.assertEquals(0, session.getBatchLoader().getPendingCount(meta));
+    }
+
+    @Test
+    public void testCollections() throws Exception {
+        final ElementIdentity<ClassEntity> identity = new BasicElementIdentity<>(meta);
+        final LazyEntityList<ClassEntity> first = new LazyEntityList<>(session, meta, new BasicDataHolder(Arrays.asList(key(0), key(1))), identity, 4);
+        final LazyEntitySet<ClassEntity> second = new LazyEntitySet<>(session, meta, new BasicDataHolder(Arrays.asList(key(2), key(3))), identity, 4);
+        final FindByIdDataHolder third = new FindByIdDataHolder(session, meta, Collections.singletonList(key(4)));
+
+        // the first batch is filled with the most recently registered keys
+        Assert.assertEquals(Arrays.asList(classes.get(0), classes.get(1)), new ArrayList<>(first));
+        Assert.assertEquals(1, session.getBatches().size());
+        Assert.assertEquals(Arrays.asList(key(0), key(1), key(4), key(3)), session.getBatches().get(0));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(classes.get(2), classes.get(3))), new HashSet<>(second));
+        Assert.assertEquals(Collections.singletonList(key(2)), session.getBatches().get(1));
+        Assert.assertEquals(Collections.singletonList(classes.get(4)), new ArrayList<>(third.get()));
+        Assert.assertEquals(2, session.getBatches().size());
+    }
+
+    @Test
+    public void testMismatchedKeyType() throws Exception {
+        final EntityMeta simple = database.getMeta(SimpleEntity.class);
+        final List<SimpleEntity> entities = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            final SimpleEntity entity = new SimpleEntity("simple " + i, Collections.emptyList());
+            simple.getAccessor(simple.findColumn("id")).setValue(entity, new BasicDataHolder((long) i), null);
+            session.save(simple, entity);
+            entities.add(entity);
+        }
+        session.getBatches().clear();
+
+        // integer keys still match the long ids read back from fetched entities
+        final ElementIdentity identity = new BasicElementIdentity(simple);
+        final List<ManyToOneAccessor> accessors = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            accessors.add(new ManyToOneAccessor(simple, i, session, identity, 0));
+        }
+        accessors.add(new ManyToOneAccessor(simple, 1L, session, identity, 0));
+        Assert.assertEquals(3, session.getBatchLoader().getPendingCount(simple));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(entities.get(i), accessors.get(i).get());
+        }
+        Assert.assertEquals(1, session.getBatches().size());
+        Assert.assertSame(entities.get(0), accessors.get(3).get());
+    }
+
+    @Test
+    public void testMaximumFetched() throws Exception {
+        final BatchLoader loader = new BatchLoader(session, 5, 2);
+        final ElementIdentity identity = new BasicElementIdentity(meta);
+        for (int i = 0; i < 5; i++) {
+            loader.register(meta, key(i));
+        }
+        Assert.assertEquals(2, loader.getPendingCount(meta));
+        Assert.assertSame(classes.get(0), loader.get(meta, identity, key(0), 0));
+        Assert.assertEquals(Arrays.asList(key(0), key(4), key(3)), session.getBatches().get(0));
+        Assert.assertEquals(2, loader.getFetchedCount(meta));
+        Assert.assertEquals(1, session.getBatches().size());
+
+        // the oldest registrations were dropped and are fetched on their own
+        Assert.assertSame(classes.get(4), loader.get(meta, identity, key(4), 0));
+        Assert.assertEquals(1, session.getBatches().size());
+        Assert.assertSame(classes.get(1), loader.get(meta, identity, key(1), 0));
+        Assert.assertEquals(2, session.getBatches().size());
+    }
+
+    @Test
+    public void testClearedWithSession() throws Exception {
+        final EntityManager manager = new EntityManager(session, database);
+        final ElementIdentity identity = new BasicElementIdentity(meta);
+        for (int i = 0; i < 3; i++) {
+            session.getBatchLoader().register(meta, key(i));
+        }
+        Assert.assertSame(classes.get(0), session.getBatchLoader().get(meta, identity, key(0), 0));
+        Assert.assertEquals(2, session.getBatchLoader().getFetchedCount(meta));
+
+        // written entities are dropped, the rest once the session is cleared
+        manager.save(classes.get(1));
+        Assert.assertEquals(1, session.getBatchLoader().getFetchedCount(meta));
+        manager.clear();
+        Assert.assertEquals(0, session.getBatchLoader().getFetchedCount(meta));
+        Assert.assertEquals(0, session.getBatchLoader().getPendingCount(meta));
+    }
+
+    @Test
+    public void testWithoutLoader() throws Exception {
+        final MapDatabaseSession plain = new MapDatabaseSession();
+        plain.save(meta, classes.get(0));
+        final ManyToOneAccessor accessor = new ManyToOneAccessor(meta, key(0), plain, new BasicElementIdentity(meta), 0);
+        Assert.assertSame(classes.get(0), accessor.get());
+        Assert.assertEquals(Collections.singletonList(key(0)), plain.getBatches().get(0));
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        Assert.assertEquals(25, BatchLoader.getBatchSize(Annotated.class.getDeclaredField("classroom")));
+        Assert.assertEquals(0, BatchLoader.getBatchSize(Annotated.class.getDeclaredField("other")));
+    }
+}
@@ -204,8 +204,15 @@ import org.normandra.entities.StoreEntity;
 import org.normandra.entities.StudentEntity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * annotation parser unit tests
@@ -226,6 +233,30 @@ public class AnnotationParserTest
         Assert.assertTrue(meta.hasColumn("type"));
     }
 
+    @Test
+    public void testDiscriminator()
+    {
+        AnnotationParser parser = new AnnotationParser(new BasicColumnAccessorFactory(), DogEntity.class, CatEntity.class);
+        EntityMeta meta = parser.read().iterator().next();
+        ColumnMeta type = meta.findColumn("type");
+        Map<ColumnMeta, Object> data = new HashMap<>();
+        data.put(meta.getPrimaryKey(), UUID.randomUUID());
+        data.put(type, "dog");
+        Assert.assertEquals(DogEntity.class, meta.getType(data));
+        data.put(type, "cat");
+        Assert.assertEquals(CatEntity.class, meta.getType(data));
+        data.put(type, "unknown");
+        Assert.assertNull(meta.getType(data));
+        data.remove(type);
+
+        // subclasses (i.e. proxies) resolve to their mapped entity type
+        DogEntity dog = new DogEntity("rover", 3) {};
+        Assert.assertEquals("dog", meta.filter(data, dog).get(type));
+        Assert.assertEquals("dog", meta.filter(data, dog).get(type));
+        Assert.assertEquals("cat", meta.filter(data, new CatEntity()).get(type));
+        Assert.assertTrue(meta.filter(data, "not an animal").isEmpty());
+    }
+
     @Test
     public void testJoinColumn()
     {
@@ -243,6 +274,66 @@ public class AnnotationParserTest
         Assert.assertEquals(entities.get(0), ((JoinColumnMeta) student.findColumn("class_id")).getEntity());
     }
 
+    @Test
+    public void testParallel()
+    {
+        final Class[] types = {ClassEntity.class, StudentEntity.class, CatEntity.class, DogEntity.class, StoreEntity.class};
+        Set<EntityMeta> sequential = new AnnotationParser(new BasicColumnAccessorFactory(), types[0], types).read();
+        Set<EntityMeta> parallel = new AnnotationParser(new BasicColumnAccessorFactory(), types[0], types).withPool(new ForkJoinPool(4)).read();
+        Assert.assertEquals(sequential, parallel);
+        Iterator<EntityMeta> itr = parallel.iterator();
+        for (final EntityMeta expected : sequential)
+        {
+            final EntityMeta actual = itr.next();
+            Assert.assertEquals(expected.getColumns().toString(), actual.getColumns().toString());
+            Assert.assertEquals(expected.getIndexed().size(), actual.getIndexed().size());
+        }
+    }
+
+    @Test
+    public void testLazy()
+    {
+        AnnotationParser parser = new AnnotationParser(new BasicColumnAccessorFactory(), StudentEntity.class, CatEntity.class, StoreEntity.class, ClassEntity.class, DogEntity.class);
+        List<Set<Class>> sets = parser.partition();
+        Assert.assertEquals(3, sets.size());
+        Assert.assertTrue(sets.contains(new HashSet<>(Arrays.asList(StudentEntity.class, ClassEntity.class))));
+        Assert.assertTrue(sets.contains(new HashSet<>(Arrays.asList(CatEntity.class, DogEntity.class))));
+
+        DatabaseMeta eager = new DatabaseMetaBuilder().withDescriptors().withClasses(StudentEntity.class, CatEntity.class, StoreEntity.class, ClassEntity.class, DogEntity.class).create();
+        DatabaseMeta lazy = new DatabaseMetaBuilder().withDescriptors().withLazyParsing(true).withClasses(StudentEntity.class, CatEntity.class, StoreEntity.class, ClassEntity.class, DogEntity.class).create();
+        EntityMeta student = lazy.getMeta(StudentEntity.class);
+        Assert.assertNotNull(student);
+        Assert.assertTrue(student.findColumn("class_id") instanceof JoinColumnMeta);
+        Assert.assertSame(lazy.getMeta(ClassEntity.class), ((JoinColumnMeta) student.findColumn("class_id")).getEntity());
+        Assert.assertEquals("AnimalEntity", lazy.getEntity("animal").getName());
+        Assert.assertNull(lazy.getEntity("unknown"));
+        Assert.assertEquals(new ArrayList<>(eager.getTables()), new ArrayList<>(lazy.getTables()));
+        Assert.assertEquals(eager.size(), lazy.size());
+    }
+
+    @Test
+    public void testFrozen()
+    {
+        AnnotationParser parser = new AnnotationParser(new BasicColumnAccessorFactory(), ClassEntity.class, StudentEntity.class);
+        EntityMeta student = new ArrayList<>(parser.read()).get(1);
+        Assert.assertTrue(student.isFrozen());
+        Assert.assertSame(student.getPrimaryKeys(), student.getPrimaryKeys());
+        Assert.assertSame(student.getColumns(), student.getColumns());
+        Assert.assertSame(student.findColumn("class_id"), student.findColumn("CLASSROOM"));
+        ColumnMeta name = student.findColumn("name");
+        Assert.assertSame(student.getAccessor(name), student.getAccessor(student.getOrdinal(name)));
+        Assert.assertSame(student.getAccessor(name), student.getAccessor("NAME"));
+        try
+        {
+            student.addColumn(new ColumnMeta("other", "other", String.class, false, false, false));
+            Assert.fail();
+        }
+        catch (final IllegalStateException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("frozen"));
+        }
+    }
+
     @Test
     public void testEmbedded()
     {